@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Responsible for keeping patients with unpaid invoices ordered by the date of their oldest unpaid invoice.
+ *
+ * A patient has been unpaid for longer than a period exactly when their oldest unpaid invoice is older than it,
+ * so finding patients unpaid over any period only visits the patients that qualify.
+ * Patients with everything paid are left out of the index.
+ * The index can be used by several threads at once. Changes that leave a patient at the same time do not wait for other threads.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class AgingIndex {
+
+	final static long DAY = 86400000L;	//1 day in milliseconds
+
+	private TreeMap<Long, LinkedHashSet<Integer>> byTime;	//Patient numbers by time of oldest unpaid invoice
+	private ConcurrentHashMap<Integer, Long> times;	//Time of oldest unpaid invoice of each patient in the index
+
+	/**
+	 * Constructor that creates an empty index.
+	 */
+	public AgingIndex(){
+		byTime = new TreeMap<Long, LinkedHashSet<Integer>>();
+		times = new ConcurrentHashMap<Integer, Long>();
+	}
+
+	/**
+	 * Places a patient in the index by the time of their oldest unpaid invoice.
+	 * @param patient		Number of patient
+	 * @param oldestUnpaid	Time of oldest unpaid invoice, Patient.NONE if everything is paid
+	 */
+	public void update(int patient, long oldestUnpaid){
+		//Most changes leave the oldest unpaid invoice as it was, which is checked without waiting for other threads
+		Long time = times.get(patient);
+		if(time != null ? time == oldestUnpaid : oldestUnpaid == Patient.NONE)
+			return;
+		move(patient, oldestUnpaid);
+	}
+
+	/**
+	 * Moves a patient to the time of their oldest unpaid invoice.
+	 * @param patient		Number of patient
+	 * @param oldestUnpaid	Time of oldest unpaid invoice, Patient.NONE if everything is paid
+	 */
+	private synchronized void move(int patient, long oldestUnpaid){
+		remove(patient);
+		if(oldestUnpaid == Patient.NONE)
+			return;
+		LinkedHashSet<Integer> pats = byTime.get(oldestUnpaid);
+		if(pats == null){
+			pats = new LinkedHashSet<Integer>();
+			byTime.put(oldestUnpaid, pats);
+		}
+		pats.add(patient);
+		times.put(patient, oldestUnpaid);
+	}
+
+	/**
+	 * Removes a patient from the index.
+	 * @param patient	Number of patient
+	 */
+	public synchronized void remove(int patient){
+		Long time = times.remove(patient);
+		if(time == null)
+			return;
+		LinkedHashSet<Integer> pats = byTime.get(time);
+		pats.remove(patient);
+		if(pats.isEmpty())
+			byTime.remove(time);
+	}
+
+	/**
+	 * Gets patients with an unpaid invoice from before the given time.
+	 * @param time	Time invoices have to be older than
+	 * @return		Patient numbers, oldest unpaid invoice first
+	 */
+	public synchronized List<Integer> olderThan(long time){
+		ArrayList<Integer> pats = new ArrayList<Integer>();
+		for(LinkedHashSet<Integer> entry : byTime.headMap(time, false).values())
+			pats.addAll(entry);
+		return pats;
+	}
+
+	/**
+	 * Sorts patients into buckets by the age of their oldest unpaid invoice in one pass.
+	 * Bucket a holds patients whose oldest unpaid invoice is at least days[a] days old
+	 * but younger than days[a+1] days. The last bucket has no upper limit.
+	 * @param now	Current time
+	 * @param days	Ages in days where each bucket starts, in ascending order
+	 * @return		Patient numbers in each bucket, oldest unpaid invoice first
+	 */
+	public synchronized List<List<Integer>> buckets(long now, int[] days){
+		List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+		for(int a = 0; a < days.length; a++)
+			buckets.add(new ArrayList<Integer>());
+		if(days.length == 0)
+			return buckets;
+
+		//Only patients in the first bucket or older are visited
+		for(Map.Entry<Long, LinkedHashSet<Integer>> entry : byTime.headMap(now - days[0] * DAY, true).entrySet()){
+			long age = now - entry.getKey();
+			int bucket = days.length - 1;
+			while(age < days[bucket] * DAY)
+				bucket--;
+			buckets.get(bucket).addAll(entry.getValue());
+		}
+		return buckets;
+	}
+
+	/**
+	 * Gets amount of patients in the index.
+	 * @return	Patients with an unpaid invoice
+	 */
+	public int size(){
+		return times.size();
+	}
+}
\ No newline at end of file
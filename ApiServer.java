@@ -0,0 +1,403 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Responsible for serving patients, invoices, procedures and payments as JSON over HTTP,
+ * so front desk, kiosk and billing tools share one copy of the patients in memory.
+ *
+ * Each request runs on its own virtual thread when the Java version has them, otherwise on a pool of daemon threads.
+ * Requests only read patients, each while holding its read lock, so a server started with the GUI runs alongside the changes made in it. Lists are paged with offset and limit, and each page says how many items there are in total.
+ *
+ * GET /patients?offset=0&limit=50&dentist=NAME&q=WORDS	Patients in the order they were added, of one dentist or matching a search
+ * GET /patients/NUMBER									Patient with their invoice numbers
+ * GET /patients/NUMBER/invoices?offset=0&limit=50		Invoices of patient with their procedures and payments
+ * GET /patients/NUMBER/invoices/NUMBER					Invoice with its procedures and payments
+ * GET /procedures?offset=0&limit=50					Procedure catalogue
+ *
+ * Usage: java -Ddentistry.api.port=PORT MainApplication
+ * Serves the patients of the GUI while it runs.
+ *
+ * Usage: java ApiServer [port]
+ * Loads the files in the current directory read-only and serves them as they were on port 8080 unless another port is given.
+ * Changes made by a GUI running at the same time are not seen until the server is started again.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class ApiServer {
+
+	final private static int PAGE = 50;			//Items per page unless a limit is given
+	final private static int MAX_PAGE = 1000;	//Most items per page
+	final private static int BACKLOG = Integer.getInteger("dentistry.api.backlog", 1024);	//Connections waiting to be accepted
+	final private static int STOP_WAIT = 2;		//Longest wait in seconds for requests when stopping
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Constructor that creates a server on a port. The server takes requests once started.
+	 * @param port	Port to listen on, 0 for any free port
+	 * @throws IOException	If the port cannot be opened
+	 */
+	public ApiServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.createContext("/", this::handle);
+		executor = IoExecutor.newExecutor("API");
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Starts taking requests.
+	 */
+	public void start(){
+		server.start();
+	}
+
+	/**
+	 * Stops taking requests, letting requests being served finish.
+	 */
+	public void stop(){
+		server.stop(STOP_WAIT);
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 * @return	Port
+	 */
+	public int getPort(){
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Loads the files read-only and serves them until stopped.
+	 *
+	 * @param args	Port to listen on
+	 */
+	public static void main(String[] args){
+		int port = 8080;
+		if(args.length > 0)
+			port = Integer.parseInt(args[0]);
+
+		MainApplication.setSink(str -> System.out.println(str));
+		MainApplication.load(true);
+
+		//Try to start the server
+		try{
+			ApiServer api = new ApiServer(port);
+			api.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				api.stop();
+				MainApplication.close();
+			}));
+			System.out.println("Serving " + MainApplication.getPatCount() + " patients on port " + api.getPort() + ".");
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Answers a request.
+	 * @param exchange	Request and response
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		int status = 200;
+		StringBuilder buf = new StringBuilder();
+		try{
+			if(!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")){
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				throw new ApiException(405, "Only GET is supported.");
+			}
+			String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+			HashMap<String, String> query = query(exchange.getRequestURI().getRawQuery());
+
+			if(path.length == 1 && path[0].equals("patients"))
+				patients(buf, query);
+			else if(path.length == 2 && path[0].equals("patients"))
+				patient(buf, patient(path[1]));
+			else if(path.length == 3 && path[0].equals("patients") && path[2].equals("invoices"))
+				invoices(buf, patient(path[1]), query);
+			else if(path.length == 4 && path[0].equals("patients") && path[2].equals("invoices"))
+				invoice(buf, patient(path[1]), path[3]);
+			else if(path.length == 1 && path[0].equals("procedures"))
+				procedures(buf, query);
+			else
+				throw new ApiException(404, "Unknown path " + exchange.getRequestURI().getPath() + ".");
+		}
+		catch (ApiException e){
+			status = e.status;
+			buf.setLength(0);
+			JsonReportWriter.string(buf.append("{\"error\":"), e.getMessage()).append('}');
+		}
+		catch (RuntimeException e){
+			e.printStackTrace();
+			status = 500;
+			buf.setLength(0);
+			buf.append("{\"error\":\"Request failed.\"}");
+		}
+
+		//Send the response
+		byte[] body = buf.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		boolean head = exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(status, head ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			if(!head)
+				out.write(body);
+		}
+	}
+
+	/**
+	 * Appends a page of patients, of one dentist or matching a search if asked for.
+	 * @param buf	Buffer to append to
+	 * @param query	Parameters of request
+	 */
+	private static void patients(StringBuilder buf, HashMap<String, String> query) throws ApiException {
+		int offset = number(query, "offset", 0);
+		int limit = Math.min(number(query, "limit", PAGE), MAX_PAGE);
+		String dent = query.get("dentist");
+		String words = query.get("q");
+		List<Integer> page;
+		int total;
+		if(words != null && !words.trim().isEmpty()){
+			List<Integer> found = MainApplication.searchPats(words, dent);
+			total = found.size();
+			page = found.subList(Math.min(offset, total), end(offset, limit, total));
+		}
+		else{
+			total = MainApplication.getPatCount(dent);
+			page = MainApplication.getPatNums(dent, offset, limit);
+		}
+
+		begin(buf, offset, limit, total);
+		boolean first = true;
+		for(int number : page){
+			Patient patient = MainApplication.getPatient(number);
+			if(patient == null)
+				continue;	//Removed since the page was found
+			if(!first)
+				buf.append(',');
+			first = false;
+			Lock lock = PatientLocks.read(patient.getPatient());
+			lock.lock();
+			try{
+				JsonReportWriter.details(buf, patient).append(",\"invoices\":").append(patient.getInvCount()).append('}');
+			}
+			finally{
+				lock.unlock();
+			}
+		}
+		buf.append("]}");
+	}
+
+	/**
+	 * Appends a patient with their invoice numbers.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient to append
+	 */
+	private static void patient(StringBuilder buf, Patient patient){
+		Lock lock = PatientLocks.read(patient.getPatient());
+		lock.lock();
+		try{
+			JsonReportWriter.details(buf, patient).append(",\"invoices\":[");
+			int[] invoices = patient.getInvNums();
+			for(int a = 0; a < invoices.length; a++){
+				if(a != 0)
+					buf.append(',');
+				buf.append(invoices[a]);
+			}
+			buf.append("]}");
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends a page of invoices of a patient with their procedures and payments.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient of invoices
+	 * @param query		Parameters of request
+	 */
+	private static void invoices(StringBuilder buf, Patient patient, HashMap<String, String> query) throws ApiException {
+		int offset = number(query, "offset", 0);
+		int limit = Math.min(number(query, "limit", PAGE), MAX_PAGE);
+		Lock lock = PatientLocks.read(patient.getPatient());
+		lock.lock();
+		try{
+			int[] invoices = patient.getInvNums();
+			begin(buf, offset, limit, invoices.length);
+			int end = end(offset, limit, invoices.length);
+			for(int a = offset; a < end; a++){
+				if(a != offset)
+					buf.append(',');
+				JsonReportWriter.invoice(buf, patient, invoices[a]);
+			}
+		}
+		finally{
+			lock.unlock();
+		}
+		buf.append("]}");
+	}
+
+	/**
+	 * Appends an invoice with its procedures and payments.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient of invoice
+	 * @param number	Number of invoice as given in the path
+	 */
+	private static void invoice(StringBuilder buf, Patient patient, String number) throws ApiException {
+		int invoice = number(number, "invoice number");
+		Lock lock = PatientLocks.read(patient.getPatient());
+		lock.lock();
+		try{
+			if(!patient.hasInvoice(invoice))
+				throw new ApiException(404, "No invoice number " + invoice + " for patient " + patient.getPatient() + ".");
+			JsonReportWriter.invoice(buf, patient, invoice);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends a page of the procedure catalogue.
+	 * @param buf	Buffer to append to
+	 * @param query	Parameters of request
+	 */
+	private static void procedures(StringBuilder buf, HashMap<String, String> query) throws ApiException {
+		int offset = number(query, "offset", 0);
+		int limit = Math.min(number(query, "limit", PAGE), MAX_PAGE);
+		int total = MainApplication.getProcCount();
+		begin(buf, offset, limit, total);
+		int end = end(offset, limit, total);
+		for(int a = offset; a < end; a++){
+			if(a != offset)
+				buf.append(',');
+			buf.append("{\"procedure\":").append(MainApplication.getProcNum(a));
+			JsonReportWriter.string(buf.append(",\"name\":"), MainApplication.getProcName(a));
+			Money.append(buf.append(",\"cost\":"), MainApplication.getProcCost(a)).append('}');
+		}
+		buf.append("]}");
+	}
+
+	/**
+	 * Appends the start of a page, leaving its list of items open.
+	 * @param buf		Buffer to append to
+	 * @param offset	Items skipped
+	 * @param limit		Most items on the page
+	 * @param total		Items in total
+	 */
+	private static void begin(StringBuilder buf, int offset, int limit, int total){
+		buf.append("{\"offset\":").append(offset).append(",\"limit\":").append(limit).append(",\"total\":").append(total).append(",\"items\":[");
+	}
+
+	/**
+	 * Gets the end of a page, which is never past the total even if offset and limit add up to more than an int holds.
+	 * @param offset	Items skipped
+	 * @param limit		Most items on the page
+	 * @param total		Items in total
+	 * @return			Index after the last item on the page
+	 */
+	private static int end(int offset, int limit, int total){
+		return (int)Math.min((long)offset + limit, total);
+	}
+
+	/**
+	 * Finds a patient by number as given in the path.
+	 * @param number	Patient number
+	 * @return			Patient
+	 * @throws ApiException	If there is no such patient
+	 */
+	private static Patient patient(String number) throws ApiException {
+		Patient patient = MainApplication.getPatient(number(number, "patient number"));
+		if(patient == null)
+			throw new ApiException(404, "No patient number " + number + ".");
+		return patient;
+	}
+
+	/**
+	 * Reads a whole number parameter that may be left out.
+	 * @param query	Parameters of request
+	 * @param name	Name of parameter
+	 * @param value	Value if left out
+	 * @return		Value of parameter
+	 * @throws ApiException	If the value is not a whole number of 0 or more
+	 */
+	private static int number(HashMap<String, String> query, String name, int value) throws ApiException {
+		String str = query.get(name);
+		return str == null ? value : number(str, name);
+	}
+
+	/**
+	 * Reads a whole number of 0 or more.
+	 * @param str	Text of number
+	 * @param name	Name of number for the error message
+	 * @return		Number
+	 * @throws ApiException	If the text is not a whole number of 0 or more
+	 */
+	private static int number(String str, String name) throws ApiException {
+		try{
+			int number = Integer.parseInt(str);
+			if(number >= 0)
+				return number;
+		}
+		catch (NumberFormatException e){
+			//Reported below
+		}
+		throw new ApiException(400, "The " + name + " must be a whole number of 0 or more.");
+	}
+
+	/**
+	 * Splits the query of a request into parameters.
+	 * @param raw	Query as sent, null if there is none
+	 * @return		Decoded parameters by name
+	 * @throws ApiException	If the query is not encoded properly
+	 */
+	private static HashMap<String, String> query(String raw) throws ApiException {
+		HashMap<String, String> query = new HashMap<String, String>();
+		if(raw == null)
+			return query;
+		for(String pair : raw.split("&")){
+			int eq = pair.indexOf('=');
+			try{
+				if(eq > 0)
+					query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+			catch (IllegalArgumentException e){
+				throw new ApiException(400, "The query is not encoded properly.");
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Responsible for a request that cannot be answered, with the HTTP status to answer with.
+	 */
+	private static class ApiException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private int status;
+
+		/**
+		 * Constructor that sets the status and message.
+		 * @param status	HTTP status
+		 * @param message	Description of problem for the client
+		 */
+		ApiException(int status, String message){
+			super(message);
+			this.status = status;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Runs the application without a display, for batch jobs such as nightly reports.
+ * Loads the files in the current directory, runs the given commands in order and
+ * prints status messages to the console. JavaFX is not needed on the class path.
+ *
+ * Usage: java BatchApplication [command]...
+ * Commands:
+ * report MODE FORMAT FILE	Writes a report, MODE is name, unpaid or age and FORMAT is text, csv, json or fixed
+ * save						Saves all patients, which also empties the journal
+ * Only loads the files and prints a summary when no commands are given.
+ * Exits with 1 if a command fails and 2 if the commands are not understood.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class BatchApplication {
+
+	final private static String[] MODES = {"name", "unpaid", "age"};	//Report modes by index
+
+	/**
+	 * Loads the files and runs the commands.
+	 *
+	 * @param args	Commands to run
+	 */
+	public static void main(String[] args){
+		//Check all commands before loading anything
+		String error = check(args);
+		if(error != null){
+			System.err.println(error);
+			System.err.println("Usage: java BatchApplication [report MODE FORMAT FILE] [save]");
+			System.exit(2);
+		}
+
+		//Print status messages, and results of background tasks on the thread finishing them
+		MainApplication.setSink(str -> System.out.println(str));
+
+		long start = System.nanoTime();
+		MainApplication.load();
+		System.out.println("Loaded " + MainApplication.getPatCount() + " patients in " + (System.nanoTime() - start) / 1000000 + " ms, \u20ac"
+				+ Money.format(MainApplication.getTotalOutstanding()) + " outstanding.");
+
+		//Run commands in order, stopping at the first to fail
+		int status = 0;
+		try{
+			for(int a = 0; a < args.length; a++){
+				if(args[a].equals("report")){
+					String file = args[a+3];
+					String summary = MainApplication.writeReportNow(mode(args[a+1]), format(args[a+2]), file);
+					System.out.println("Report written to " + file + " (" + summary + ").");
+					a += 3;
+				}
+				else{
+					String summary = MainApplication.writePatsNow();
+					System.out.println("Patients saved (" + summary + ").");
+				}
+			}
+		}
+		catch (IOException | RuntimeException e){
+			e.printStackTrace();
+			status = 1;
+		}
+
+		MainApplication.close();
+		System.exit(status);
+	}
+
+	/**
+	 * Checks commands are understood.
+	 *
+	 * @param args	Commands to check
+	 * @return		Description of the first problem, null if there is none
+	 */
+	private static String check(String[] args){
+		for(int a = 0; a < args.length; a++){
+			if(args[a].equals("report")){
+				if(a + 3 >= args.length)
+					return "report needs a mode, a format and a file.";
+				if(mode(args[a+1]) < 0)
+					return "Unknown report mode " + args[a+1] + ", use name, unpaid or age.";
+				if(format(args[a+2]) < 0)
+					return "Unknown report format " + args[a+2] + ", use text, csv, json or fixed.";
+				a += 3;
+			}
+			else if(!args[a].equals("save"))
+				return "Unknown command " + args[a] + ".";
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a report mode by name.
+	 *
+	 * @param name	Name of mode
+	 * @return		Mode, -1 if unknown
+	 */
+	private static int mode(String name){
+		for(int a = 0; a < MODES.length; a++){
+			if(MODES[a].equalsIgnoreCase(name))
+				return a;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds a report format by the start of its name, so csv finds "CSV" and json finds "JSON lines".
+	 *
+	 * @param name	Start of name of format
+	 * @return		Index of format in getReportFormats, -1 if unknown
+	 */
+	private static int format(String name){
+		String[] formats = MainApplication.getReportFormats();
+		for(int a = 0; a < formats.length && !name.isEmpty(); a++){
+			if(formats[a].toLowerCase(Locale.ROOT).startsWith(name.toLowerCase(Locale.ROOT)))
+				return a;
+		}
+		return -1;
+	}
+}
\ No newline at end of file
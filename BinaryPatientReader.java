@@ -0,0 +1,229 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Responsible for reading patient data written by BinaryPatientWriter.
+ * Patients can either be read fully from a stream or mapped from a file, in which case
+ * only patient details are decoded up front and invoices are decoded when first needed.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class BinaryPatientReader {
+
+	/**
+	 * Reads all patients from a binary store file.
+	 * @param file	Name of file to read from
+	 * @return		Patients read from the file
+	 * @throws IOException	If the file cannot be read or is not a binary store
+	 */
+	public static ArrayList<Patient> read(String file) throws IOException {
+		try (InputStream in = new FileInputStream(file)){
+			return read(in);
+		}
+	}
+
+	/**
+	 * Reads all patients from a stream in the binary store format.
+	 * @param stream	Stream to read from
+	 * @return			Patients read from the stream
+	 * @throws IOException	If the stream cannot be read or is not a binary store
+	 */
+	public static ArrayList<Patient> read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 65536));
+
+		//Check header
+		if(in.readInt() != BinaryPatientWriter.MAGIC)
+			throw new IOException("Not a binary patient store.");
+		short version = in.readShort();
+		if(version != BinaryPatientWriter.VERSION)
+			throw new IOException("Unsupported patient store version " + version + ".");
+		in.readLong();	//Generation is read by readGeneration
+
+		//Get patient count
+		int patients = in.readInt();
+		ArrayList<Patient> patientList = new ArrayList<Patient>(patients);
+
+		//Get patient data
+		for(int a = 0; a < patients; a++){
+			int number = in.readInt();
+			String name = readString(in);
+			String address = readString(in);
+			String phoneNo = readString(in);
+			String dent = readString(in);
+			in.readLong();	//Outstanding amount is added up again as invoices are read
+			in.readLong();	//Oldest unpaid time is worked out again from the invoices
+			Patient patient = new Patient(number, name, address, phoneNo, dent);
+			patientList.add(patient);
+
+			//Get invoice count, the invoice length is only needed for skipping
+			int invoices = in.readInt();
+			in.readInt();
+
+			//Get invoice data
+			for(int b = 0; b < invoices; b++){
+				int invoice = patient.addInvoice(in.readInt());
+				patient.setInvDate(invoice, in.readLong());
+
+				//Get procedure data
+				int procs = in.readInt();
+				for(int c = 0; c < procs; c++){
+					int procNum = in.readInt();
+					String procName = readString(in);
+					patient.addProcedure(invoice, procNum, procName, in.readLong());
+				}
+
+				//Get payment data
+				int pays = in.readInt();
+				for(int c = 0; c < pays; c++){
+					int payNum = in.readInt();
+					patient.addPay(invoice, payNum, in.readLong());
+					patient.setPayDate(invoice, c, in.readLong());
+				}
+			}
+			patient.markSaved();	//Patient matches the file
+		}
+		return patientList;
+	}
+
+	/**
+	 * Maps a binary store file into memory and reads patient details from it.
+	 * Invoices are left in the mapped file and decoded when a patient's invoices are first used.
+	 * @param file	Name of file to map
+	 * @return		Patients read from the file
+	 * @throws IOException	If the file cannot be mapped or is not a binary store
+	 */
+	public static ArrayList<Patient> map(String file) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)){
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());	//Stays valid after the channel is closed
+		}
+
+		//Check header
+		if(buf.remaining() < 18 || buf.getInt() != BinaryPatientWriter.MAGIC)
+			throw new IOException("Not a binary patient store.");
+		short version = buf.getShort();
+		if(version != BinaryPatientWriter.VERSION)
+			throw new IOException("Unsupported patient store version " + version + ".");
+		buf.getLong();	//Generation is read by readGeneration
+
+		//Get patient count
+		int patients = buf.getInt();
+		ArrayList<Patient> patientList = new ArrayList<Patient>(patients);
+
+		//Get patient details and skip over their invoices
+		for(int a = 0; a < patients; a++){
+			int number = buf.getInt();
+			String name = readString(buf);
+			String address = readString(buf);
+			String phoneNo = readString(buf);
+			String dent = readString(buf);
+			long outstanding = buf.getLong();
+			long oldest = buf.getLong();
+			Patient patient = new Patient(number, name, address, phoneNo, dent);
+			patientList.add(patient);
+
+			int invoices = buf.getInt();
+			int length = buf.getInt();
+			if(invoices > 0){
+				ByteBuffer slice = buf.slice();
+				slice.limit(length);
+				patient.setPendingInvoices(slice, invoices, outstanding, oldest);
+			}
+			buf.position(buf.position() + length);
+			patient.markSaved();	//Patient matches the file
+		}
+		return patientList;
+	}
+
+	/**
+	 * Decodes invoices mapped from a binary store and adds them to a patient.
+	 * @param buf		Encoded invoices
+	 * @param invoices	Amount of invoices
+	 * @param patient	Patient to add invoices to
+	 */
+	static void readInvoices(ByteBuffer buf, int invoices, Patient patient){
+		for(int b = 0; b < invoices; b++){
+			int invoice = patient.addInvoice(buf.getInt());
+			patient.setInvDate(invoice, buf.getLong());
+
+			//Get procedure data
+			int procs = buf.getInt();
+			for(int c = 0; c < procs; c++){
+				int procNum = buf.getInt();
+				String procName = readString(buf);
+				patient.addProcedure(invoice, procNum, procName, buf.getLong());
+			}
+
+			//Get payment data
+			int pays = buf.getInt();
+			for(int c = 0; c < pays; c++){
+				int payNum = buf.getInt();
+				patient.addPay(invoice, payNum, buf.getLong());
+				patient.setPayDate(invoice, c, buf.getLong());
+			}
+		}
+	}
+
+	/**
+	 * Reads the generation of the save from the header of a binary store file.
+	 * @param file	Name of file to read from
+	 * @return		Generation of the save
+	 * @throws IOException	If the file cannot be read or is not a binary store
+	 */
+	public static long readGeneration(String file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))){
+			if(in.readInt() != BinaryPatientWriter.MAGIC)
+				throw new IOException("Not a binary patient store.");
+			in.readShort();
+			return in.readLong();
+		}
+	}
+
+	/**
+	 * Checks if a file starts with the binary store header.
+	 * @param file	Name of file to check
+	 * @return		True if the file is a binary store
+	 */
+	public static boolean isBinary(String file){
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))){
+			return in.readInt() == BinaryPatientWriter.MAGIC;
+		}
+		catch (IOException e){
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a string stored as its UTF-8 length followed by its bytes.
+	 * @param in	Stream to read from
+	 * @return		String read
+	 * @throws IOException	If reading fails
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a string stored as its UTF-8 length followed by its bytes.
+	 * @param buf	Buffer to read from
+	 * @return		String read
+	 */
+	static String readString(ByteBuffer buf){
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Responsible for streaming patient data to a file in the binary store format.
+ *
+ * The file starts with a header of the magic number, format version and generation of the save followed by the patient count.
+ * The generation goes up with every save and ties the journal to the save it follows.
+ * Each patient is stored as its number, name, address, phone number, dentist, outstanding amount
+ * and time of its oldest unpaid invoice followed by its invoice count and the length in bytes of its invoices, so readers can skip over invoices they do not need.
+ * Each invoice is stored as its number and date followed by its procedures and payments, each starting with its number.
+ * Strings are stored as their UTF-8 length followed by the bytes, times as milliseconds
+ * and amounts as whole cents.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class BinaryPatientWriter implements Closeable {
+
+	final static int MAGIC = 0x44454E54;	//"DENT"
+	final static short VERSION = 1;
+
+	private PatientWriter.ByteCounter counter;
+	private DataOutputStream out;
+	private ByteArrayOutputStream invoiceBytes;	//Reused buffer for a patient's invoices
+	private DataOutputStream invoiceOut;
+	private byte[] chunk;	//Reused buffer for copying mapped invoices
+	private long records;
+	private long start;
+	private long elapsed;
+	private boolean closed;
+
+	/**
+	 * Constructor that opens the given file and writes the header.
+	 * @param file	Name of file to write to
+	 * @throws IOException	If the file cannot be opened or written
+	 */
+	public BinaryPatientWriter(String file) throws IOException {
+		this(new FileOutputStream(file));
+	}
+
+	/**
+	 * Constructor that writes the header to the given stream.
+	 * @param stream	Stream to write to
+	 * @throws IOException	If writing fails
+	 */
+	public BinaryPatientWriter(OutputStream stream) throws IOException {
+		start = System.nanoTime();
+		counter = new PatientWriter.ByteCounter(stream);
+		out = new DataOutputStream(new BufferedOutputStream(counter, 65536));
+		invoiceBytes = new ByteArrayOutputStream(4096);
+		invoiceOut = new DataOutputStream(invoiceBytes);
+		chunk = new byte[8192];
+		records = 0;
+		closed = false;
+
+		//Write header
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+	}
+
+	/**
+	 * Writes the generation of the save and the amount of patients that will follow.
+	 * @param generation	Generation of the save
+	 * @param patients		Amount of patients
+	 * @throws IOException	If writing fails
+	 */
+	public void writeCount(long generation, int patients) throws IOException {
+		out.writeLong(generation);
+		out.writeInt(patients);
+	}
+
+	/**
+	 * Writes a patient along with all of its invoices.
+	 * @param patient	Patient to write
+	 * @throws IOException	If writing fails
+	 */
+	public void write(Patient patient) throws IOException {
+		//Write patient details
+		out.writeInt(patient.getPatient());
+		writeString(out, patient.getName());
+		writeString(out, patient.getAddress());
+		writeString(out, patient.getNum());
+		writeString(out, patient.getDentist());
+		out.writeLong(patient.getOutstanding());
+		out.writeLong(patient.getOldestUnpaid());
+		records++;
+
+		//Copy invoices that were never decoded from a mapped store as they are
+		ByteBuffer pending = patient.getPendingInvoices();
+		if(pending != null){
+			out.writeInt(patient.getInvCount());
+			out.writeInt(pending.remaining());
+			records += patient.getInvCount();
+			while(pending.hasRemaining()){
+				int length = Math.min(chunk.length, pending.remaining());
+				pending.get(chunk, 0, length);
+				out.write(chunk, 0, length);
+			}
+			return;
+		}
+
+		//Write invoices to the buffer first so their length can go in front of them
+		invoiceBytes.reset();
+		int[] invoices = patient.getInvNums();
+		for(int a : invoices){
+			invoiceOut.writeInt(a);
+			invoiceOut.writeLong(patient.getInvTime(a));
+
+			//Write procedures
+			int procs = patient.getProcCount(a);
+			invoiceOut.writeInt(procs);
+			for(int b = 0; b < procs; b++){
+				invoiceOut.writeInt(patient.getProcNum(a, b));
+				writeString(invoiceOut, patient.getProcName(a, b));
+				invoiceOut.writeLong(patient.getProcCost(a, b));
+			}
+
+			//Write payments
+			int pays = patient.getPayCount(a);
+			invoiceOut.writeInt(pays);
+			for(int b = 0; b < pays; b++){
+				invoiceOut.writeInt(patient.getPayNum(a, b));
+				invoiceOut.writeLong(patient.getPayAmt(a, b));
+				invoiceOut.writeLong(patient.getPayTime(a, b));
+			}
+			records += 1 + procs + pays;
+		}
+
+		out.writeInt(invoices.length);
+		out.writeInt(invoiceBytes.size());
+		invoiceBytes.writeTo(out);
+	}
+
+	/**
+	 * Flushes and closes the file and stops the timer.
+	 * Does nothing if already closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!closed){
+			closed = true;
+			try{
+				out.close();
+			}
+			finally{
+				elapsed = System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Gets amount of bytes written to the file.
+	 * Only includes flushed data until closed.
+	 * @return	Bytes written
+	 */
+	public long getBytes(){
+		return counter.getCount();
+	}
+
+	/**
+	 * Gets amount of records written.
+	 * Patients, invoices, procedures and payments each count as one record.
+	 * Invoices copied from a mapped store are counted without their procedures and payments.
+	 * @return	Records written
+	 */
+	public long getRecords(){
+		return records;
+	}
+
+	/**
+	 * Gets time taken from opening to closing the file in milliseconds.
+	 * @return	Elapsed time in milliseconds
+	 */
+	public long getElapsed(){
+		if(closed)
+			return elapsed / 1000000;
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Creates a summary of the save for the system log.
+	 * @return	Summary of records, bytes and time
+	 */
+	public String getSummary(){
+		return getRecords() + " records, " + getBytes() + " bytes in " + getElapsed() + " ms";
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length followed by its bytes.
+	 * @param out	Stream to write to
+	 * @param str	String to write
+	 * @throws IOException	If writing fails
+	 */
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Generates a clinic's patient, procedure and dentist files for load and scale testing.
+ *
+ * The same amount of patients, seed and end date always give the same files. Patients are created one at a time
+ * while the store is written, so stores of any size are generated in little memory.
+ * Invoices per patient and payments follow what a clinic sees: most patients have a few invoices and some many,
+ * most invoices have one procedure, cheap procedures are more common than expensive ones, about 70% of invoices are paid,
+ * some in instalments, 15% are partly paid and 15% are unpaid. Some dentists have more patients than others.
+ * Invoices are dated over the five years before the end date.
+ *
+ * Usage: java ClinicGenerator [patients] [seed] [directory] [end date]
+ * Generates 10000 patients with seed 1 into the current directory, ending today, when nothing is given.
+ * Dentists are named after people and log in with passwords pass1, pass2 and onwards.
+ * The numbers used are saved to Ids.txt, replacing any there, so the application never hands them out again.
+ *
+ * Tuned with system properties:
+ * dentistry.gen.dentists		Amount of dentists, 1 per 1500 patients by default
+ * dentistry.gen.invoices		Average invoices per patient, 3 by default
+ * dentistry.gen.procedures		Average procedures per invoice, 1.6 by default
+ * dentistry.gen.binary			Set to true to write the binary store Patients.dat instead of Patients.txt
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class ClinicGenerator {
+
+	final private static double INVOICES = Double.parseDouble(System.getProperty("dentistry.gen.invoices", "3"));
+	final private static double PROCEDURES = Double.parseDouble(System.getProperty("dentistry.gen.procedures", "1.6"));
+	final private static boolean BINARY = Boolean.getBoolean("dentistry.gen.binary");
+	final private static long DAY = 24L * 60 * 60 * 1000;
+	final private static int YEARS = 5;		//Years invoices are spread over
+	final private static int PROGRESS = 1000000;	//Patients between progress messages
+
+	//Procedure catalogue, most common first
+	final private static String[] PROC_NAMES = {"Check-up", "Cleaning", "X-Ray", "Filling", "Fluoride Treatment", "Extraction", "Whitening",
+			"Root Canal", "Crown", "Bridge", "Dentures", "Implant"};
+	final private static long[] PROC_COSTS = {4000, 6000, 3500, 9000, 3000, 12000, 30000, 45000, 70000, 120000, 150000, 250000};
+
+	final private static String[] FIRST_NAMES = {"Aoife", "Ciara", "Emma", "Sarah", "Niamh", "Grace", "Anna", "Laura", "Kate", "Orla", "Maria", "Julia",
+			"Sean", "Conor", "Jack", "James", "Michael", "Patrick", "David", "Daniel", "Mark", "Kamil", "Adam", "Tomasz"};
+	final private static String[] LAST_NAMES = {"Murphy", "Kelly", "O'Sullivan", "Walsh", "Smith", "O'Brien", "Byrne", "Ryan", "O'Connor", "O'Neill",
+			"Doyle", "McCarthy", "Gallagher", "Kennedy", "Lynch", "Murray", "Quinn", "Moore", "Nowak", "Kowalski", "Markiewicz", "Wisniewski"};
+	final private static String[] STREETS = {"Main Street", "Church Road", "Bridge Street", "Station Road", "Green Lane", "Park Avenue", "Mill Road",
+			"High Street", "Castle Street", "Abbey Street", "Strand Road", "College Road"};
+	final private static String[] TOWNS = {"Dublin", "Cork", "Galway", "Limerick", "Waterford", "Athlone", "Sligo", "Kilkenny", "Wexford", "Tralee"};
+
+	/**
+	 * Generates the files.
+	 *
+	 * @param args	Amount of patients, seed, output directory and end date as yyyy-mm-dd
+	 */
+	public static void main(String[] args){
+		int patients = 10000;
+		long seed = 1;
+		File dir = new File(".");
+		LocalDate end = LocalDate.now(ZoneOffset.UTC);
+		if(args.length > 0)
+			patients = Integer.parseInt(args[0]);
+		if(args.length > 1)
+			seed = Long.parseLong(args[1]);
+		if(args.length > 2)
+			dir = new File(args[2]);
+		if(args.length > 3)
+			end = LocalDate.parse(args[3]);
+		int dentists = Integer.getInteger("dentistry.gen.dentists", Math.max(1, patients / 1500));
+
+		//Try to generate the files
+		try{
+			dir.mkdirs();
+			for(String store : new String[]{"Patients.dat", "Patients"}){
+				if(!BINARY && new File(dir, store).exists())
+					System.out.println("Warning: " + store + " in " + dir + " is read instead of Patients.txt, remove it to use the generated patients.");
+			}
+			System.out.println("Generating " + patients + " patients of " + dentists + " dentists with seed " + seed + ", ending " + end + ".");
+			Random random = new Random(seed);
+			writeProcs(new File(dir, "Procedures.txt"));
+			String[] names = writeDents(new File(dir, "Dentists.txt"), dentists, random);
+
+			long start = System.nanoTime();
+			Clinic clinic = new Clinic(patients, names, end.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), random);
+			String summary;
+			if(BINARY)
+				summary = MainApplication.writePatsBin(new File(dir, "Patients.dat").getPath(), clinic);
+			else
+				summary = MainApplication.writePats(new File(dir, "Patients.txt").getPath(), clinic);
+			System.out.println("Wrote " + patients + " patients in " + (System.nanoTime() - start) / 1000000 + " ms (" + summary + ").");
+
+			//Numbers used by the generated records are never handed out again
+			IdAllocator.save(new File(dir, "Ids.txt").getPath());
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes the procedure catalogue in the format MainApplication.readProcs reads.
+	 * @param file	File to write to
+	 * @throws IOException	If the file cannot be written
+	 */
+	private static void writeProcs(File file) throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			writer.write("v2");
+			for(int a = 0; a < PROC_NAMES.length; a++)
+				writer.write("\n" + (a + 1) + "\n" + PROC_NAMES[a] + "\n" + Money.format(PROC_COSTS[a]));
+		}
+	}
+
+	/**
+	 * Writes dentists in the format MainApplication.readDents reads.
+	 * Names are made unique by numbering them once every name is used.
+	 * @param file		File to write to
+	 * @param dentists	Amount of dentists
+	 * @param random	Source of random data
+	 * @return			Names of dentists
+	 * @throws IOException	If the file cannot be written
+	 */
+	private static String[] writeDents(File file, int dentists, Random random) throws IOException {
+		String[] names = new String[dentists];
+		int combinations = FIRST_NAMES.length * LAST_NAMES.length;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for(int a = 0; a < dentists; a++){
+				names[a] = "Dr. " + FIRST_NAMES[a % FIRST_NAMES.length] + " " + LAST_NAMES[a / FIRST_NAMES.length % LAST_NAMES.length];
+				if(a >= combinations)
+					names[a] += " " + (a / combinations + 1);
+				if(a > 0)
+					writer.write('\n');
+				writer.write(names[a] + "\n" + address(random) + "\npass" + (a + 1));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Makes up an address.
+	 * @param random	Source of random data
+	 * @return			Address
+	 */
+	private static String address(Random random){
+		return (1 + random.nextInt(200)) + " " + STREETS[random.nextInt(STREETS.length)] + ", " + TOWNS[random.nextInt(TOWNS.length)];
+	}
+
+	/**
+	 * Picks a number from 0 up to a bound, with low numbers more likely.
+	 * @param random	Source of random data
+	 * @param bound		Highest number plus one
+	 * @param skew		1 for all numbers equally likely, higher to favour low numbers more
+	 * @return			Number picked
+	 */
+	private static int skewed(Random random, int bound, double skew){
+		return Math.min(bound - 1, (int)(bound * Math.pow(random.nextDouble(), skew)));
+	}
+
+	/**
+	 * Picks a count from a geometric distribution, so most counts are near 0 with a long tail.
+	 * @param random	Source of random data
+	 * @param mean		Average count
+	 * @return			Count picked
+	 */
+	private static int geometric(Random random, double mean){
+		if(mean <= 0)
+			return 0;
+		return (int)(Math.log(1 - random.nextDouble()) / Math.log(mean / (mean + 1)));
+	}
+
+	/**
+	 * Responsible for the generated patients. Patients are created as the store writer asks for them
+	 * and can only be gone through once.
+	 */
+	private static class Clinic extends AbstractCollection<Patient> {
+
+		private int patients;
+		private String[] dentists;
+		private long end;		//Time of the last day invoices may be dated
+		private Random random;
+
+		/**
+		 * Constructor that sets up the patients to generate.
+		 * @param patients	Amount of patients
+		 * @param dentists	Names of dentists
+		 * @param end		Time of the last day invoices may be dated
+		 * @param random	Source of random data
+		 */
+		Clinic(int patients, String[] dentists, long end, Random random){
+			this.patients = patients;
+			this.dentists = dentists;
+			this.end = end;
+			this.random = random;
+		}
+
+		@Override
+		public int size(){
+			return patients;
+		}
+
+		@Override
+		public Iterator<Patient> iterator(){
+			return new Iterator<Patient>(){
+				private int next = 0;
+
+				@Override
+				public boolean hasNext(){
+					return next < patients;
+				}
+
+				@Override
+				public Patient next(){
+					if(next == patients)
+						throw new NoSuchElementException();
+					next++;
+					if(next % PROGRESS == 0)
+						System.out.println(next + " patients generated...");
+					return patient();
+				}
+			};
+		}
+
+		/**
+		 * Creates the next patient with their invoices, procedures and payments.
+		 * @return	Patient
+		 */
+		private Patient patient(){
+			String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+			String phone = "08" + (3 + random.nextInt(7)) + " " + (1000000 + random.nextInt(9000000));
+			Patient patient = new Patient(name, address(random), phone, dentists[skewed(random, dentists.length, 1.5)]);
+
+			//Date invoices in order over the years before the end date
+			long[] dates = new long[geometric(random, INVOICES)];
+			for(int a = 0; a < dates.length; a++)
+				dates[a] = end - random.nextInt(YEARS * 365) * DAY;
+			Arrays.sort(dates);
+
+			for(long date : dates){
+				int invoice = patient.addInvoice();
+				patient.setInvDate(invoice, date);
+				long cost = 0;
+				for(int a = 1 + geometric(random, PROCEDURES - 1); a > 0; a--){
+					int proc = skewed(random, PROC_NAMES.length, 2.5);
+					patient.addProcedure(invoice, proc + 1, PROC_NAMES[proc], PROC_COSTS[proc]);
+					cost += PROC_COSTS[proc];
+				}
+
+				//Pay in full, in part or not at all, in up to three instalments
+				int chance = random.nextInt(100);
+				long paid = chance < 70 ? cost : chance < 85 ? cost * (10 + random.nextInt(80)) / 100 : 0;
+				int instalments = paid == 0 ? 0 : 1 + skewed(random, 3, 2);
+				long payDate = date;
+				for(int a = 0; a < instalments; a++){
+					long amount = a == instalments - 1 ? paid : paid / (instalments - a) / 100 * 100;
+					paid -= amount;
+					payDate = Math.min(end, payDate + (1 + random.nextInt(45)) * DAY);
+					patient.addPay(invoice, amount);
+					patient.setPayDate(invoice, a, payDate);
+				}
+			}
+			return patient;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+/**
+ * Responsible for writing reports as comma separated values with one row per patient.
+ * Fields holding commas, quotes or line breaks are quoted. Report text such as totals is left out.
+ * In the aging report each row ends with the age bucket of the patient.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class CsvReportWriter implements ReportWriter {
+
+	@Override
+	public String getName(){
+		return "CSV";
+	}
+
+	@Override
+	public void begin(StringBuilder buf, String title, boolean buckets){
+		buf.append("patient,name,address,phone,dentist,invoices,outstanding,oldest_unpaid");
+		if(buckets)
+			buf.append(",bucket");
+		buf.append('\n');
+	}
+
+	@Override
+	public void line(StringBuilder buf, String line){
+	}
+
+	@Override
+	public void patient(StringBuilder buf, Patient patient, String bucket, boolean between){
+		buf.append(patient.getPatient()).append(',');
+		field(buf, patient.getName()).append(',');
+		field(buf, patient.getAddress()).append(',');
+		field(buf, patient.getNum()).append(',');
+		field(buf, patient.getDentist()).append(',');
+		buf.append(patient.getInvCount()).append(',');
+		Money.append(buf, patient.getOutstanding()).append(',');
+		if(patient.getOldestUnpaid() != Patient.NONE)
+			ReportEngine.appendDate(buf, patient.getOldestUnpaid());
+		if(bucket != null)
+			field(buf.append(','), bucket);
+		buf.append('\n');
+	}
+
+	/**
+	 * Appends a text field, quoting it if it holds a comma, quote or line break.
+	 * @param buf	Buffer to append to
+	 * @param str	Text of field
+	 * @return		The same buffer
+	 */
+	private static StringBuilder field(StringBuilder buf, String str){
+		boolean quote = false;
+		for(int a = 0; a < str.length() && !quote; a++){
+			char c = str.charAt(a);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if(!quote)
+			return buf.append(str);
+
+		//Double quotes inside a quoted field
+		buf.append('"');
+		for(int a = 0; a < str.length(); a++){
+			char c = str.charAt(a);
+			if(c == '"')
+				buf.append('"');
+			buf.append(c);
+		}
+		return buf.append('"');
+	}
+}
\ No newline at end of file
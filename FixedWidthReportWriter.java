@@ -0,0 +1,105 @@
+/**
+ * Responsible for writing reports as fixed width columns with one row per patient.
+ * Text longer than its column is cut off. Report text such as totals is left out.
+ * In the aging report each row ends with the age bucket of the patient.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class FixedWidthReportWriter implements ReportWriter {
+
+	//Column widths
+	final private static int NUMBER = 8;
+	final private static int NAME = 30;
+	final private static int ADDRESS = 40;
+	final private static int PHONE = 16;
+	final private static int DENTIST = 20;
+	final private static int INVOICES = 8;
+	final private static int OUTSTANDING = 14;
+	final private static int DATE = 10;
+	final private static int BUCKET = 17;
+
+	@Override
+	public String getName(){
+		return "Fixed width";
+	}
+
+	@Override
+	public void begin(StringBuilder buf, String title, boolean buckets){
+		pad(buf, "PATIENT", NUMBER, true);
+		pad(buf, "NAME", NAME, false);
+		pad(buf, "ADDRESS", ADDRESS, false);
+		pad(buf, "PHONE", PHONE, false);
+		pad(buf, "DENTIST", DENTIST, false);
+		pad(buf, "INVOICES", INVOICES, true);
+		pad(buf, "OUTSTANDING", OUTSTANDING, true);
+		pad(buf, "UNPAID", DATE, false);
+		if(buckets)
+			pad(buf, "BUCKET", BUCKET, false);
+		buf.setCharAt(buf.length()-1, '\n');	//Replace space after last column
+	}
+
+	@Override
+	public void line(StringBuilder buf, String line){
+	}
+
+	@Override
+	public void patient(StringBuilder buf, Patient patient, String bucket, boolean between){
+		int start = buf.length();
+		buf.append(patient.getPatient());
+		align(buf, start, NUMBER, true);
+		pad(buf, patient.getName(), NAME, false);
+		pad(buf, patient.getAddress(), ADDRESS, false);
+		pad(buf, patient.getNum(), PHONE, false);
+		pad(buf, patient.getDentist(), DENTIST, false);
+		start = buf.length();
+		buf.append(patient.getInvCount());
+		align(buf, start, INVOICES, true);
+		start = buf.length();
+		Money.append(buf, patient.getOutstanding());
+		align(buf, start, OUTSTANDING, true);
+		start = buf.length();
+		if(patient.getOldestUnpaid() != Patient.NONE)
+			ReportEngine.appendDate(buf, patient.getOldestUnpaid());
+		align(buf, start, DATE, false);
+		if(bucket != null)
+			pad(buf, bucket, BUCKET, false);
+		buf.setCharAt(buf.length()-1, '\n');	//Replace space after last column
+	}
+
+	/**
+	 * Appends text in a column, cutting it off if it is too long.
+	 * @param buf	Buffer to append to
+	 * @param str	Text of column
+	 * @param width	Width of column
+	 * @param right	Set to align text to the right
+	 */
+	private static void pad(StringBuilder buf, String str, int width, boolean right){
+		int start = buf.length();
+		buf.append(str);
+		align(buf, start, width, right);
+	}
+
+	/**
+	 * Pads or cuts off text appended to the buffer since start so it fills a column, followed by a space.
+	 * Line breaks in the text are replaced by spaces to keep one row per patient.
+	 * @param buf	Buffer appended to
+	 * @param start	Position in buffer where the column starts
+	 * @param width	Width of column
+	 * @param right	Set to align text to the right
+	 */
+	private static void align(StringBuilder buf, int start, int width, boolean right){
+		if(buf.length() - start > width)
+			buf.setLength(start + width);
+		for(int a = start; a < buf.length(); a++){
+			if(buf.charAt(a) == '\n' || buf.charAt(a) == '\r')
+				buf.setCharAt(a, ' ');
+		}
+		while(buf.length() - start < width){
+			if(right)
+				buf.insert(start, ' ');
+			else
+				buf.append(' ');
+		}
+		buf.append(' ');
+	}
+}
\ No newline at end of file
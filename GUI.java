@@ -1,9 +1,10 @@
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.function.IntFunction;
 import javax.imageio.ImageIO;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -13,6 +14,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.RadioButton;
@@ -28,11 +30,11 @@ import javafx.stage.Stage;
 
 /**
  * Manages the graphical user interface
- * Extends Application class
+ * Extends Application class and shows status messages of the main class
  * @author	Kamil Markiewicz
  * @version	2.0
  */
-public class GUI extends Application{
+public class GUI extends Application implements StatusSink{
 
 	//Prepare global nodes that will persist throughout the application
 	Stage window;
@@ -52,6 +54,11 @@ public class GUI extends Application{
 	Button buttonReport;
 	Button buttonSignOut;
 	final String ICON = "icon.png";
+	final double ROW_HEIGHT = 24;	//Height of list rows, fixed so long lists never measure their rows
+
+	StoreListener view;		//Updates the lists of the menu on display as patients change
+	ListView<Integer> listProcs;		//Rows are indexes of procedures on the invoice on display
+	ListView<Integer> listPays;			//Rows are indexes of payments on the invoice on display
 
 
 	/* (non-Javadoc)
@@ -61,7 +68,7 @@ public class GUI extends Application{
 	 */
 	@Override
 	public void start(Stage stage) throws Exception {
-		MainApplication.setGUI(this);	//Establish a link between the GUI and main class
+		MainApplication.setSink(this);	//Establish a link between the GUI and main class
 
 		window = stage;
 
@@ -143,6 +150,7 @@ public class GUI extends Application{
 			top.getChildren().clear();
 			left.getChildren().clear();
 			right.getChildren().clear();
+			setView(null);
 			loginScreen();		//Return to login screen
 			logContent.setText("Signed out.");
 		});
@@ -162,10 +170,36 @@ public class GUI extends Application{
 	 * 
 	 * @param str	System log message
 	 */
+	@Override
 	public void setLog(String str){
 		logContent.setText(str);
 	}
 
+	/**
+	 * Runs a task on the GUI thread, such as showing the result of a background task.
+	 * Tasks finishing after the GUI is closed are dropped.
+	 * 
+	 * @param task	Task to run
+	 */
+	@Override
+	public void run(Runnable task){
+		try{
+			Platform.runLater(task);
+		}
+		catch (IllegalStateException e){
+			//GUI is closed
+		}
+	}
+
+	/**
+	 * Shows the GUI and waits until it is closed.
+	 * 
+	 * @param args	Arguments for JavaFX
+	 */
+	public static void open(String[] args){
+		Application.launch(GUI.class, args);
+	}
+
 	/**
 	 * Loads images for main menu and sets an icon for the window.
 	 */
@@ -298,19 +332,26 @@ public class GUI extends Application{
 
 		Label labelPat = new Label("Patient list");		//Create label for patient menu
 
-		//Create a list view of patients
-		ListView<String> listPat = new ListView<String>();
-		ObservableList<String> patients =FXCollections.observableArrayList();
-
-		//Populate list view
-		ArrayList<Integer> patRefs = new ArrayList<Integer>();
-		for(int a = 0; a <  MainApplication.getPatCount(); a++){
-			if((MainApplication.getPatDentist(a).equals(MainApplication.getActiveDentist()))){
-				patRefs.add(a);
-				patients.add(MainApplication.getPatName(a) + "\t\t" + MainApplication.getPatAddress(a));
+		//Create a list view of the active dentist's patients, showing name and address of each visible row
+		ObservableList<Integer> patRows = FXCollections.observableArrayList(MainApplication.getActivePats());
+		ListView<Integer> listPat = lazyList(patRows, a -> MainApplication.getPatName(a) + "\t\t" + MainApplication.getPatAddress(a));
+
+		//Create search field which narrows down the list as the user types
+		TextField searchField = new TextField();
+		searchField.setPromptText("Search by name, address or phone number");
+		searchField.textProperty().addListener((observable, oldText, newText) -> patRows.setAll(MainApplication.searchPats(newText)));
+
+		//Add or remove rows as patients of the active dentist are added or removed
+		setView(event -> {
+			if(event.getType() == StoreEvent.PAT_ADDED && MainApplication.getPatDentist(event.getPatient()).equals(MainApplication.getActiveDentist())){
+				if(searchField.getText().trim().isEmpty())
+					patRows.add(event.getPatient());
+				else
+					patRows.setAll(MainApplication.searchPats(searchField.getText()));
 			}
-		}
-		listPat.setItems(patients);
+			else if(event.getType() == StoreEvent.PAT_REMOVED)
+				patRows.remove(Integer.valueOf(event.getPatient()));
+		});
 
 		//Create button for displaying patient info
 		Button buttonInfo = new Button("Display Info");
@@ -319,7 +360,7 @@ public class GUI extends Application{
 			if(listPat.getSelectionModel().getSelectedIndex() == -1)
 				setLog("Click on a patient to display first.");
 			else
-				displayPatWindow(patRefs.get(listPat.getSelectionModel().getSelectedIndex()));	//Display patient info window
+				displayPatWindow(listPat.getSelectionModel().getSelectedItem());	//Display patient info window
 		});
 		buttonInfo.setMinWidth(144);
 
@@ -331,7 +372,7 @@ public class GUI extends Application{
 				setLog("Click on a patient to manage first.");
 			else{
 				center.getChildren().clear();
-				invMenu(patRefs.get(listPat.getSelectionModel().getSelectedIndex()));	//Display invoice menu for this patient
+				invMenu(listPat.getSelectionModel().getSelectedItem());	//Display invoice menu for this patient
 				setLog("Manage patient's invoices from here.");
 			}
 		});
@@ -349,7 +390,7 @@ public class GUI extends Application{
 			if(listPat.getSelectionModel().getSelectedIndex() == -1)
 				setLog("Click on a patient to remove first.");
 			else
-				removePatWindow(patRefs.get(listPat.getSelectionModel().getSelectedIndex()));	//Display remove patient window
+				removePatWindow(listPat.getSelectionModel().getSelectedItem());	//Display remove patient window
 		});
 		buttonRemove.setMinWidth(144);
 
@@ -363,13 +404,13 @@ public class GUI extends Application{
 		patientOptions.getChildren().addAll(buttonInfo, buttonInvoice, buttonAdd, buttonRemove);
 
 		//Add nodes to the center borderpane
-		center.getChildren().addAll(labelPat, listPat, patientOptions);
+		center.getChildren().addAll(labelPat, searchField, listPat, patientOptions);
 	}
 
 	/**
 	 * Opens window and displays patient information in it.
 	 * 
-	 * @param index	Index of patient to display
+	 * @param index	Number of patient to display
 	 */
 	public void displayPatWindow(int index){
 		Stage stage = new Stage();	//Create new stage
@@ -399,6 +440,8 @@ public class GUI extends Application{
 	 * Displays procedure menu.
 	 */
 	public void procMenu(){
+		setView(null);	//Menu shows no patients
+
 		//Change to suitable insets
 		left.setPadding(new Insets(9, 16, 9, 16));
 		right.setPadding(new Insets(9, 16, 9, 16));
@@ -414,7 +457,7 @@ public class GUI extends Application{
 		//Populate list view with procedures
 		int procs = MainApplication.getProcCount();
 		for(int a = 0; a < procs; a++)
-			procedures.add("\u20ac" + MainApplication.getProcCost(a) + "\t" + MainApplication.getProcName(a));
+			procedures.add("\u20ac" + Money.format(MainApplication.getProcCost(a)) + "\t" + MainApplication.getProcName(a));
 		listProc.setItems(procedures);
 
 		//Create button to add procedure
@@ -473,9 +516,7 @@ public class GUI extends Application{
 		buttonConfirm.setOnAction(e -> {
 			MainApplication.removePat(index);	//Remove patient from system
 			setLog("Patient " + name + " removed.");
-			center.getChildren().clear();
 			stage.close();	//Close window
-			patMenu();		//Refresh patient menu to reflect changes
 		});
 		buttonConfirm.setDefaultButton(true);
 		buttonConfirm.setMinWidth(144);
@@ -551,8 +592,8 @@ public class GUI extends Application{
 	/**
 	 * Opens a new window and prompts to remove procedure from invoice in it.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param proc		Index of procedure
 	 */
 	public void removeInvProcWindow(int index, int invoice, int proc){
@@ -560,16 +601,14 @@ public class GUI extends Application{
 		String name = MainApplication.getInvProcName(index, invoice, proc);	//Procedure name
 
 		//Create label for the procedure removal window prompt
-		Label labelName = new Label("Remove procedure " + name + " from invoice " + MainApplication.getInvNum(index, invoice) + "?");
+		Label labelName = new Label("Remove procedure " + name + " from invoice " + invoice + "?");
 
 		//Create button for removing procedure from invoice
 		Button buttonConfirm = new Button("Remove");
 		buttonConfirm.setOnAction(e -> {
 			MainApplication.removeInvProc(index, invoice, proc);	//Remove procedure from invoice
 			setLog("Procedure " + name + " removed.");
-			center.getChildren().clear();
 			stage.close();		//Close window
-			editInv(index, invoice);	//Refresh invoice to reflect changes
 		});
 		buttonConfirm.setDefaultButton(true);
 		buttonConfirm.setMinWidth(144);
@@ -598,25 +637,23 @@ public class GUI extends Application{
 	/**
 	 * Opens new window and prompts to remove payment in it.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param pay		Index of payment
 	 */
 	public void removePayWindow(int index, int invoice, int pay){
 		Stage stage = new Stage();
-		double amount = MainApplication.getPayAmt(index, invoice, pay);	//Payment amount
+		String amount = Money.format(MainApplication.getPayAmt(index, invoice, pay));	//Payment amount
 
 		//Create label for payment removal window prompt
-		Label labelName = new Label("Remove payment of " + amount + " from invoice " + MainApplication.getInvNum(index, invoice) + "?");
+		Label labelName = new Label("Remove payment of " + amount + " from invoice " + invoice + "?");
 
 		//Create button for removing payment
 		Button buttonConfirm = new Button("Remove");
 		buttonConfirm.setOnAction(e -> {
 			MainApplication.removePay(index, invoice, pay);	//Remove payment from system
 			setLog("Payment of " + amount + " removed.");
-			center.getChildren().clear();
 			stage.close();		//Close window
-			editInv(index, invoice);	//Refresh invoice to reflect changes
 		});
 		buttonConfirm.setDefaultButton(true);
 		buttonConfirm.setMinWidth(144);
@@ -645,24 +682,20 @@ public class GUI extends Application{
 	/**
 	 * Opens a new window and prompts to remove invoice in it.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 */
 	public void removeInvWindow(int index, int invoice){
 		Stage stage = new Stage();
-		int num = MainApplication.getInvNum(index, invoice);	//Invoice number
-
 		//Create label for invoice removal window prompt
-		Label labelName = new Label("Remove invoice number " + num + "?");
+		Label labelName = new Label("Remove invoice number " + invoice + "?");
 
 		//Create button for removing invoice
 		Button buttonConfirm = new Button("Remove");
 		buttonConfirm.setOnAction(e -> {
 			MainApplication.removeInv(index, invoice);	//Remove invoice from system
-			setLog("Invoice " + num + " removed.");
-			center.getChildren().clear();
+			setLog("Invoice " + invoice + " removed.");
 			stage.close();		//Close window
-			invMenu(index);		//Refresh invoice menu to reflect changes
 		});
 		buttonConfirm.setDefaultButton(true);
 		buttonConfirm.setMinWidth(144);
@@ -707,7 +740,7 @@ public class GUI extends Application{
 
 		//Create text field for new procedure cost
 		TextField costField = new TextField ();
-		costField.setPromptText("(\u20ac)" + MainApplication.getProcCost(index));
+		costField.setPromptText("(\u20ac)" + Money.format(MainApplication.getProcCost(index)));
 		Label labelCost = new Label("Procedure Cost (\u20ac): ");
 
 		//Create button for editing procedure
@@ -749,8 +782,8 @@ public class GUI extends Application{
 	/**
 	 * Displays edit invoice menu.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 */
 	public void editInv(int index, int invoice){
 		//Change to suitable insets
@@ -759,7 +792,7 @@ public class GUI extends Application{
 		center.setPadding(new Insets(9, 16, 9, 16));
 
 		//Create label for edit invoice menu
-		Label labelInv = new Label(MainApplication.getPatName(index) + "'s invoice number " + MainApplication.getInvNum(index, invoice));
+		Label labelInv = new Label(MainApplication.getPatName(index) + "'s invoice number " + invoice);
 
 		//Create VBox for procedures contained in the invoice
 		VBox procBox = createProcBox(index, invoice);
@@ -767,6 +800,20 @@ public class GUI extends Application{
 		//Create VBox for payments contained in the invoice
 		VBox payBox = createPayBox(index, invoice);
 
+		//Add or remove rows as procedures and payments of the invoice are added or removed
+		setView(event -> {
+			if(event.getPatient() != index || event.getInvoice() != invoice)
+				return;
+			if(event.getType() == StoreEvent.PROC_ADDED)
+				listProcs.getItems().add(listProcs.getItems().size());
+			else if(event.getType() == StoreEvent.PROC_REMOVED)
+				removeRow(listProcs);
+			else if(event.getType() == StoreEvent.PAY_ADDED)
+				listPays.getItems().add(listPays.getItems().size());
+			else if(event.getType() == StoreEvent.PAY_REMOVED)
+				removeRow(listPays);
+		});
+
 		//Create button to return to invoice menu
 		Button buttonReturn = new Button("Return");
 		buttonReturn.setOnAction(e -> {
@@ -788,24 +835,17 @@ public class GUI extends Application{
 	/**
 	 * Creates a VBox of procedures in an invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @return			VBox of procedures
 	 */
 	public VBox createProcBox(int index, int invoice){
 		//Create a label for procedure box
 		Label labelProcs = new Label("Procedure list");
 
-		//Create a list view of procedures
-		ListView<String> listProcs = new ListView<String>();
-		ObservableList<String> procs =FXCollections.observableArrayList();
-
-		//Populate list view with procedures
-		int procCount = MainApplication.getInvProcCount(index, invoice);
-		for(int a = 0; a < procCount; a++){
-			procs.add("\u20ac" + MainApplication.getInvProcCost(index, invoice, a) + "\t" + MainApplication.getInvProcName(index, invoice, a));
-		}
-		listProcs.setItems(procs);
+		//Create a list view of procedures, showing cost and name of each visible row
+		listProcs = lazyList(rows(MainApplication.getInvProcCount(index, invoice)),
+				a -> "\u20ac" + Money.format(MainApplication.getInvProcCost(index, invoice, a)) + "\t" + MainApplication.getInvProcName(index, invoice, a));
 
 		//Create button for adding procedure
 		Button buttonAddProc = new Button("Add Procedure");
@@ -841,24 +881,17 @@ public class GUI extends Application{
 	/**
 	 * Creates a VBox of payments in an invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @return			VBox of payments
 	 */
 	public VBox createPayBox(int index, int invoice){
 		//Create label for payment box
 		Label labelPays = new Label("Payment list");
 
-		//Create list view of payments
-		ListView<String> listPays = new ListView<String>();
-		ObservableList<String> pays =FXCollections.observableArrayList();
-
-		//Populate list view with payments
-		int payCount = MainApplication.getPayCount(index, invoice);
-		for(int a = 0; a < payCount; a++){
-			pays.add(MainApplication.getPayDate(index, invoice, a) + "\t\u20ac" + MainApplication.getPayAmt(index, invoice, a));
-		}
-		listPays.setItems(pays);
+		//Create list view of payments, showing date and amount of each visible row
+		listPays = lazyList(rows(MainApplication.getPayCount(index, invoice)),
+				a -> MainApplication.getPayDate(index, invoice, a) + "\t\u20ac" + Money.format(MainApplication.getPayAmt(index, invoice, a)));
 
 		//Create button to add payment
 		Button buttonAddPay = new Button("Add Payment");
@@ -921,9 +954,7 @@ public class GUI extends Application{
 			//Check if patient details are valid and add to system
 			boolean correct = MainApplication.addPat(nameField.getText(), addressField.getText(), phoneField.getText());
 			if(correct){
-				center.getChildren().clear();
 				stage.close();	//Close window
-				patMenu();		//Refresh patient menu to reflect changes
 			}
 		});
 		buttonConfirm.setDefaultButton(true);
@@ -1010,8 +1041,8 @@ public class GUI extends Application{
 	/**
 	 * Opens new window and prompts to add payment in it.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 */
 	public void addPayWindow(int index, int invoice){
 		Stage stage = new Stage();
@@ -1031,9 +1062,7 @@ public class GUI extends Application{
 			boolean correct = MainApplication.addPay(index, invoice, payField.getText());
 			if(correct){
 				setLog("Payment added successfully.");
-				center.getChildren().clear();
 				stage.close();				//Close window
-				editInv(index, invoice);	//Refresh invoice to reflect changes
 			}
 		});
 		buttonConfirm.setDefaultButton(true);
@@ -1064,21 +1093,21 @@ public class GUI extends Application{
 	/**
 	 * Opens new window and prompts to add new procedure to invoice in it.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of patient
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 */
 	public void addInvProcWindow(int index, int invoice){
 		Stage stage = new Stage();
 
 		//Create labels for add procedure to invoice window
-		Label labelAdd = new Label("Add procedure to invoice " + MainApplication.getInvNum(index, invoice) + "?");
+		Label labelAdd = new Label("Add procedure to invoice " + invoice + "?");
 		Label labelProc = new Label("Choose procedure:");
 
 		//Create ComboBox of procedures to choose from
 		ObservableList<String> procedures =FXCollections.observableArrayList();
 		int procs = MainApplication.getProcCount();
 		for(int a = 0; a < procs; a++)
-			procedures.add("\u20ac" + MainApplication.getProcCost(a) + "\t" + MainApplication.getProcName(a));
+			procedures.add("\u20ac" + Money.format(MainApplication.getProcCost(a)) + "\t" + MainApplication.getProcName(a));
 		ComboBox<String> procDropDown = new ComboBox<String>(procedures);
 
 		//Create button for adding procedure
@@ -1089,8 +1118,6 @@ public class GUI extends Application{
 			else{
 				MainApplication.addInvProc(index, invoice, procDropDown.getSelectionModel().getSelectedIndex());
 				stage.close();
-				center.getChildren().clear();
-				editInv(index,invoice);
 			}
 		});
 		buttonConfirm.setDefaultButton(true);
@@ -1121,7 +1148,7 @@ public class GUI extends Application{
 	/**
 	 * Opens new window and prompts to add invoice to patient in it.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 */
 	public void addInvWindow(int index){
 		Stage stage = new Stage();
@@ -1135,7 +1162,7 @@ public class GUI extends Application{
 		ObservableList<String> procedures =FXCollections.observableArrayList();
 		int procs = MainApplication.getProcCount();
 		for(int a = 0; a < procs; a++)
-			procedures.add("\u20ac" + MainApplication.getProcCost(a) + "\t" + MainApplication.getProcName(a));
+			procedures.add("\u20ac" + Money.format(MainApplication.getProcCost(a)) + "\t" + MainApplication.getProcName(a));
 		ComboBox<String> procDropDown = new ComboBox<String>(procedures);
 
 		//Create button for adding invoice
@@ -1146,8 +1173,6 @@ public class GUI extends Application{
 			else{
 				MainApplication.addInv(index, procDropDown.getSelectionModel().getSelectedIndex());
 				stage.close();	//Close window
-				center.getChildren().clear();	//Clear center
-				invMenu(index);	//Refresh invoice menu
 			}
 		});
 		buttonConfirm.setDefaultButton(true);
@@ -1219,6 +1244,8 @@ public class GUI extends Application{
 	 * Displays report menu.
 	 */
 	public void reportMenu(){
+		setView(null);	//Menu shows no patients
+
 		//Set appropriate paddings
 		left.setPadding(new Insets(9, 144, 9, 16));
 		right.setPadding(new Insets(9, 144, 9, 16));
@@ -1230,7 +1257,7 @@ public class GUI extends Application{
 		//Create TextField for report name
 		TextField nameField = new TextField ();
 		nameField.setPromptText("Report file name");
-		Label labelName = new Label("Report file name: (Make sure to add .txt)");
+		Label labelName = new Label("Report file name: (Make sure to add .txt, .csv or .jsonl)");
 
 		//Create group for radio buttons
 		ToggleGroup group = new ToggleGroup();
@@ -1246,22 +1273,32 @@ public class GUI extends Application{
 		radioPaid.setUserData(1);
 		radioPaid.setToggleGroup(group);
 
+		//Create radio button for grouping by age of oldest unpaid invoice
+		RadioButton radioAging = new RadioButton("Group by age unpaid");
+		radioAging.setUserData(2);
+		radioAging.setToggleGroup(group);
+
+		//Create ComboBox of output formats to choose from
+		Label labelFormat = new Label("Report format:");
+		ComboBox<String> formatDropDown = new ComboBox<String>(FXCollections.observableArrayList(MainApplication.getReportFormats()));
+		formatDropDown.getSelectionModel().select(0);
+
 		//Create button to generate report
 		Button buttonGenerate = new Button("Generate report");
 		buttonGenerate.setOnAction(e -> {
-			MainApplication.writeReport((int)group.getSelectedToggle().getUserData(), nameField.getText());
+			MainApplication.writeReport((int)group.getSelectedToggle().getUserData(), formatDropDown.getSelectionModel().getSelectedIndex(), nameField.getText());
 		});
 		buttonGenerate.setDefaultButton(true);
 		buttonGenerate.setMinWidth(144);
 
 		//Set center with new layout
-		center.getChildren().addAll(labelProc, labelName, nameField, radioName, radioPaid, buttonGenerate);
+		center.getChildren().addAll(labelProc, labelName, nameField, radioName, radioPaid, radioAging, labelFormat, formatDropDown, buttonGenerate);
 	}
 
 	/**
 	 * Displays invoice menu.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 */
 	public void invMenu(int index){
 		//Set appropriate paddings
@@ -1272,22 +1309,30 @@ public class GUI extends Application{
 		//Create label with title
 		Label labelInv = new Label(MainApplication.getPatName(index) + "'s invoice list");
 
-		//Create List of invoices
-		ListView<String> listInv = new ListView<String>();
-		ObservableList<String> invoices =FXCollections.observableArrayList();
+		//Create List of invoices, showing the totals of each visible row
+		ObservableList<Integer> invRows = FXCollections.observableArrayList();
+		for(int a : MainApplication.getInvNums(index))
+			invRows.add(a);
+		ListView<Integer> listInv = lazyList(invRows, a -> {
+			String str = MainApplication.getInvOut(index, a) >= 100000 ? "" : "\t";
+			return a + "\t\t" + "\u20ac" + Money.format(MainApplication.getInvOut(index, a))
+			+ " Outstanding\t\t" + str + MainApplication.getInvProcCount(index, a) + " Procedures\t\t" + MainApplication.getPayCount(index, a) + " Payments";
+		});
 
-		//Populate List with invoices
-		int invs = MainApplication.getInvCount(index);
-		String str = "";
-		for(int a = 0; a < invs; a++){
-			if(MainApplication.getInvOut(index, a) >= 1000)
-				str = "";
-			else
-				str = "\t";
-			invoices.add(MainApplication.getInvNum(index, a) + "\t\t" + "\u20ac" + MainApplication.getInvOut(index, a)
-			+ " Outstanding\t\t" + str + MainApplication.getInvProcCount(index, a) + " Procedures\t\t" + MainApplication.getPayCount(index, a) + " Payments");
-		}
-		listInv.setItems(invoices);
+		//Add or remove rows as invoices of the patient are added or removed, and redraw rows whose totals change
+		setView(event -> {
+			if(event.getPatient() != index)
+				return;
+			if(event.getType() == StoreEvent.INV_ADDED)
+				invRows.add(event.getInvoice());
+			else if(event.getType() == StoreEvent.INV_REMOVED)
+				invRows.remove(Integer.valueOf(event.getInvoice()));
+			else if(event.isInvoiceChange()){
+				int row = invRows.indexOf(event.getInvoice());
+				if(row != -1)
+					invRows.set(row, event.getInvoice());
+			}
+		});
 
 		//Create button to add invoice
 		Button buttonAdd = new Button("Add Invoice");
@@ -1301,7 +1346,7 @@ public class GUI extends Application{
 				setLog("Click on an invoice to edit first.");
 			else{
 				center.getChildren().clear();
-				editInv(index, listInv.getSelectionModel().getSelectedIndex());
+				editInv(index, listInv.getSelectionModel().getSelectedItem());
 			}
 		});
 		buttonEdit.setMinWidth(144);
@@ -1312,7 +1357,7 @@ public class GUI extends Application{
 			if(listInv.getSelectionModel().getSelectedIndex() == -1)
 				setLog("Click on an invoice to remove first.");
 			else
-				removeInvWindow(index, listInv.getSelectionModel().getSelectedIndex());
+				removeInvWindow(index, listInv.getSelectionModel().getSelectedItem());
 		});
 		buttonRemove.setMinWidth(144);
 
@@ -1336,6 +1381,64 @@ public class GUI extends Application{
 		center.getChildren().addAll(labelInv, listInv, invoiceOptions);
 	}
 
+	/**
+	 * Creates a list view whose rows are numbers, such as patient numbers, formatted into text only
+	 * when a row becomes visible. Adding or removing a number only changes that row.
+	 * 
+	 * @param rows		Numbers of rows
+	 * @param format	Formats the text of a row from its number
+	 * @return			List view of the rows
+	 */
+	public ListView<Integer> lazyList(ObservableList<Integer> rows, IntFunction<String> format){
+		ListView<Integer> list = new ListView<Integer>(rows);
+		list.setFixedCellSize(ROW_HEIGHT);
+		list.setCellFactory(view -> new ListCell<Integer>(){
+			@Override
+			protected void updateItem(Integer row, boolean empty){
+				super.updateItem(row, empty);
+				setText(empty || row == null ? null : format.apply(row));
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Removes a row from a list whose rows are indexes, such as procedures on an invoice.
+	 * Later rows move up a row, so the last row is dropped and the rest are drawn again.
+	 * 
+	 * @param list	List to remove a row from
+	 */
+	public void removeRow(ListView<Integer> list){
+		list.getItems().remove(list.getItems().size()-1);
+		list.refresh();
+	}
+
+	/**
+	 * Makes a listener keep the menu on display up to date, replacing the listener of the previous menu.
+	 * 
+	 * @param listener	Listener of the menu on display, null if the menu shows no patients
+	 */
+	public void setView(StoreListener listener){
+		if(view != null)
+			MainApplication.removeListener(view);
+		view = listener;
+		if(listener != null)
+			MainApplication.addListener(listener);
+	}
+
+	/**
+	 * Creates rows numbered from 0, for lists of procedures or payments on an invoice.
+	 * 
+	 * @param count	Amount of rows
+	 * @return		Rows 0 to count-1
+	 */
+	public ObservableList<Integer> rows(int count){
+		ObservableList<Integer> rows = FXCollections.observableArrayList();
+		for(int a = 0; a < count; a++)
+			rows.add(a);
+		return rows;
+	}
+
 	/**
 	 * Opens a new modal window using the parameters provided.
 	 * 
@@ -0,0 +1,165 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Responsible for handing out numbers for patients, invoices, procedures and payments.
+ *
+ * Numbers are handed out atomically so any thread can create records. Each kind of number
+ * reserves a block of numbers at a time and saves the end of the block to the id file before
+ * any number in it is used, so numbers are never handed out twice, even after a crash.
+ * Numbers left over in a block when the application stops are skipped.
+ * Records read with a known number claim it so it is never handed out again, without saving the id file.
+ * Until an id file is loaded numbers are only kept in memory.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class IdAllocator {
+
+	final static int BLOCK = Integer.getInteger("dentistry.id.block", 64);	//Numbers reserved per save of the id file
+
+	final static IdAllocator PATIENT = new IdAllocator("patient");
+	final static IdAllocator INVOICE = new IdAllocator("invoice");
+	final static IdAllocator PROCEDURE = new IdAllocator("procedure");
+	final static IdAllocator PAYMENT = new IdAllocator("payment");
+	final private static IdAllocator[] KINDS = {PATIENT, INVOICE, PROCEDURE, PAYMENT};
+
+	private static String file;		//Id file, null if numbers are not saved
+	final private static Object lock = new Object();	//Held while reserving and saving
+
+	private String name;
+	private AtomicInteger last;		//Last number handed out or claimed
+	private volatile int reserved;	//Numbers up to this one are saved as used
+
+	/**
+	 * Constructor that creates an allocator for one kind of number.
+	 * @param name	Name of the kind of number in the id file
+	 */
+	private IdAllocator(String name){
+		this.name = name;
+		last = new AtomicInteger(0);
+		reserved = 0;
+	}
+
+	/**
+	 * Hands out the next number.
+	 * @return	Number that has not been handed out before
+	 */
+	public int next(){
+		int id = last.incrementAndGet();
+		if(id > reserved)
+			reserve(id);
+		return id;
+	}
+
+	/**
+	 * Claims a known number, such as one read from file, so it is never handed out.
+	 * The id file is not saved, as a claimed number is already kept in the file it was read from
+	 * and is claimed again whenever that file is read.
+	 * @param id	Number to claim
+	 */
+	public void claim(int id){
+		last.accumulateAndGet(id, Math::max);
+	}
+
+	/**
+	 * Gets the last number handed out or claimed.
+	 * @return	Last number
+	 */
+	public int getLast(){
+		return last.get();
+	}
+
+	/**
+	 * Reserves a new block of numbers covering the given number and saves it to the id file.
+	 * Returns only once the block is saved, so callers never use a number that is not saved.
+	 * @param id	Number that has to be reserved
+	 */
+	private void reserve(int id){
+		synchronized(lock){
+			if(id <= reserved)
+				return;		//Another thread reserved it while this one waited
+			int mark = id + BLOCK - 1;
+			if(file != null){
+				try{
+					save(this, mark);
+				}
+				catch (IOException e){
+					e.printStackTrace();	//Numbers are still unique for this run
+				}
+			}
+			reserved = mark;
+		}
+	}
+
+	/**
+	 * Loads the saved numbers from an id file and saves future reservations to it.
+	 * Numbers already handed out or claimed are kept if they are higher.
+	 * @param idFile	Name of id file
+	 * @throws IOException	If the file exists but cannot be read
+	 */
+	public static void load(String idFile) throws IOException {
+		synchronized(lock){
+			file = idFile;
+			if(!new File(idFile).exists())
+				return;
+			try (BufferedReader br = new BufferedReader(new FileReader(idFile))){
+				String nextLine;
+				while((nextLine = br.readLine()) != null){
+					String[] entry = nextLine.split(" ");
+					for(int a = 0; a < KINDS.length; a++){
+						if(KINDS[a].name.equals(entry[0])){
+							int mark = Integer.parseInt(entry[1]);
+							KINDS[a].last.accumulateAndGet(mark, Math::max);
+							KINDS[a].reserved = Math.max(KINDS[a].reserved, mark);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves every number handed out or claimed so far as used to an id file and saves future reservations to it,
+	 * such as once records created without an id file are saved.
+	 * @param idFile	Name of id file
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static void save(String idFile) throws IOException {
+		synchronized(lock){
+			file = idFile;
+			for(int a = 0; a < KINDS.length; a++)
+				KINDS[a].reserved = Math.max(KINDS[a].reserved, KINDS[a].last.get());
+			save(PATIENT, PATIENT.reserved);
+		}
+	}
+
+	/**
+	 * Writes the reserved numbers of all kinds to a temporary file which then replaces the id file.
+	 * Must be called while holding the lock.
+	 * @param kind	Kind whose block is being reserved
+	 * @param mark	New end of that kind's block
+	 * @throws IOException	If the file cannot be written
+	 */
+	private static void save(IdAllocator kind, int mark) throws IOException {
+		Path temp = Paths.get(file + ".tmp");
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp.toFile()), StandardCharsets.UTF_8))) {
+			for(int a = 0; a < KINDS.length; a++){
+				int value = KINDS[a] == kind ? mark : KINDS[a].reserved;
+				writer.write(KINDS[a].name + " " + value + "\n");
+			}
+		}
+		Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
\ No newline at end of file
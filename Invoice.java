@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -10,33 +12,64 @@ import java.util.Date;
 public class Invoice {
 
 	private int invoiceNo;
-	static private int invoiceNum = 0;
-	private double invoiceAmt;
+	private long invoiceAmt;	//Outstanding amount in cents
 	private Date invoiceDate;
 	private boolean isPaid;
 	private ArrayList<Procedure> in_procList;
 	private ArrayList<Payment> in_paymentList;
+	private boolean dirty;	//Set when changed since last saved
+	private int version;	//Incremented on every change
 
 	/**
 	 * Constructor.
 	 */
 	public Invoice(){
+		this(IdAllocator.INVOICE.next());
+	}
+
+	/**
+	 * Constructor that creates an invoice with a known invoice number, such as one read from file.
+	 * @param number	Number of invoice
+	 */
+	public Invoice(int number){
 		in_procList = new ArrayList<Procedure>();
 		in_paymentList = new ArrayList<Payment>();
 		invoiceDate = new Date();
-		invoiceNum++;
-		invoiceNo = invoiceNum;
+		IdAllocator.INVOICE.claim(number);	//Never hand out this number again
+		invoiceNo = number;
 		invoiceAmt = 0;
 		isPaid = false;
+		dirty = true;
+		version = 0;
+	}
+
+	/**
+	 * Copies the invoice for saving or reporting on another thread.
+	 * Procedures are shared as they do not change once on an invoice.
+	 * @return	Copy with the same number, amounts, procedures and payments
+	 */
+	Invoice snapshot(){
+		Invoice copy = new Invoice(invoiceNo);
+		copy.invoiceAmt = invoiceAmt;
+		copy.invoiceDate.setTime(invoiceDate.getTime());
+		copy.isPaid = isPaid;
+		copy.in_procList.addAll(in_procList);
+		for(int a = 0; a < in_paymentList.size(); a++)
+			copy.in_paymentList.add(in_paymentList.get(a).snapshot());
+		copy.dirty = dirty;
+		copy.version = version;
+		return copy;
 	}
 
 	/**
 	 * Adds procedure to the invoice.
-	 * @param name	Name of procedure
-	 * @param cost	Cost of procedure
+	 * @param number	Number of the catalogue procedure billed, 0 if not known
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
 	 */
-	public void addProcedure(String name, double cost){
-		in_procList.add(new Procedure(name, cost));
+	public void addProcedure(int number, String name, long cost){
+		touch();
+		in_procList.add(new Procedure(number, name, cost));
 		invoiceAmt += cost;
 		if(cost != 0)
 			isPaid = false;
@@ -47,6 +80,7 @@ public class Invoice {
 	 * @param index	Index of procedure
 	 */
 	public void removeProcedure(int index){
+		touch();
 		invoiceAmt = invoiceAmt - in_procList.get(index).getProcCost();
 		if(invoiceAmt <= 0)
 			isPaid = true;
@@ -58,48 +92,79 @@ public class Invoice {
 	 * @param index	Index of payment
 	 */
 	public void removePay(int index){
+		touch();
 		invoiceAmt += in_paymentList.get(index).getPaymentAmt();
 		if(invoiceAmt > 0)
 			isPaid = false;
 		in_paymentList.remove(index);
 	}
 
+	/**
+	 * Adds a new payment to invoice.
+	 * @param amount	Amount of payment in cents
+	 */
+	public void addPay(long amount){
+		addPay(new Payment(amount));
+	}
+
+	/**
+	 * Adds a payment with a known payment number to invoice, such as one read from file.
+	 * @param number	Number of payment
+	 * @param amount	Amount of payment in cents
+	 */
+	public void addPay(int number, long amount){
+		addPay(new Payment(number, amount));
+	}
+
 	/**
 	 * Adds payment to invoice.
-	 * @param amount	Amount of payment
+	 * @param pay	Payment to add
 	 */
-	public void addPay(double amount){
-		in_paymentList.add(new Payment(amount));
+	private void addPay(Payment pay){
+		long amount = pay.getPaymentAmt();
+		touch();
+		in_paymentList.add(pay);
 		invoiceAmt = invoiceAmt - amount;
 		if(invoiceAmt <= 0)
 			isPaid = true;
 	}
 
 	/**
-	 * Creates a string of invoice data for file storage.
-	 * @return	String of invoice data
+	 * Writes invoice data for file storage.
+	 * @param writer	Writer to write invoice data to
+	 * @return	Amount of records written
+	 * @throws IOException	If writing fails
 	 */
-	public String saveInvoice(){
-		String str = "";	//Prepare string
+	public int saveInvoice(Writer writer) throws IOException {
+		int records = 1;	//Count the invoice itself
 
-		//Add invoice details to string
-		str += invoiceDate.getTime() + "\n"
-				+ in_procList.size() + "\n";
+		//Write invoice details
+		writer.write(Integer.toString(invoiceNo));
+		writer.write('\n');
+		writer.write(Long.toString(invoiceDate.getTime()));
+		writer.write('\n');
+		writer.write(Integer.toString(in_procList.size()));
+		writer.write('\n');
 
-		//Add procedure details to string
-		if(in_procList.size() > 0){
-			for(int a = 0; a < in_procList.size(); a++)
-				str += in_procList.get(a).getProcName() + "\n" + in_procList.get(a).getProcCost() +"\n";
+		//Write procedure details
+		for(int a = 0; a < in_procList.size(); a++){
+			writer.write(Integer.toString(in_procList.get(a).getProc()));
+			writer.write('\n');
+			writer.write(in_procList.get(a).getProcName());
+			writer.write('\n');
+			writer.write(Money.format(in_procList.get(a).getProcCost()));
+			writer.write('\n');
+			records++;
 		}
 
-		str += in_paymentList.size() + "\n";
-		//Add payment details to string
-		if(in_paymentList.size() > 0){
-			for(int a = 0; a < in_paymentList.size(); a++){
-				str += in_paymentList.get(a).savePayment() +"\n";
-			}
+		writer.write(Integer.toString(in_paymentList.size()));
+		writer.write('\n');
+		//Write payment details
+		for(int a = 0; a < in_paymentList.size(); a++){
+			in_paymentList.get(a).savePayment(writer);
+			records++;
 		}
-		return str;
+		return records;
 	}
 
 	/**
@@ -112,9 +177,9 @@ public class Invoice {
 
 	/**
 	 * Gets invoice amount.
-	 * @return	Amount of invoice
+	 * @return	Amount of invoice in cents
 	 */
-	public double getInvoiceAmt(){
+	public long getInvoiceAmt(){
 		return invoiceAmt;
 	}
 
@@ -136,9 +201,9 @@ public class Invoice {
 
 	/**
 	 * Gets outstanding amount of invoice.
-	 * @return	Outstanding amount of invoice
+	 * @return	Outstanding amount of invoice in cents
 	 */
-	public double getOutstanding(){
+	public long getOutstanding(){
 		return invoiceAmt;
 	}
 
@@ -161,12 +226,30 @@ public class Invoice {
 	/**
 	 * Gets cost of a procedure.
 	 * @param 	index	Index of procedure
-	 * @return	Cost of procedure
+	 * @return	Cost of procedure in cents
 	 */
-	public double getProcCost(int index){
+	public long getProcCost(int index){
 		return in_procList.get(index).getProcCost();
 	}
 
+	/**
+	 * Gets number of the catalogue procedure a procedure was billed from.
+	 * @param 	index	Index of procedure
+	 * @return	Number of procedure, 0 if not known
+	 */
+	public int getProcNum(int index){
+		return in_procList.get(index).getProc();
+	}
+
+	/**
+	 * Gets number of a payment.
+	 * @param index	Index of payment
+	 * @return		Number of payment
+	 */
+	public int getPayNum(int index){
+		return in_paymentList.get(index).getPayment();
+	}
+
 	/**
 	 * Gets name of a procedure.
 	 * @param 	index	Index of procedure
@@ -187,12 +270,21 @@ public class Invoice {
 		return strDate;
 	}
 
+	/**
+	 * Gets time of a payment.
+	 * @param index	Index of payment
+	 * @return		Time of payment in milliseconds
+	 */
+	public long getPayTime(int index){
+		return in_paymentList.get(index).getDate().getTime();
+	}
+
 	/**
 	 * Gets a payment amount.
 	 * @param index	Index of payment
-	 * @return		Amount of payment
+	 * @return		Amount of payment in cents
 	 */
-	public double getPayAmt(int index){
+	public long getPayAmt(int index){
 		return in_paymentList.get(index).getPaymentAmt();
 	}
 
@@ -209,6 +301,7 @@ public class Invoice {
 	 * @param date	Date of invoice
 	 */
 	public void setDate(long date){
+		touch();
 		invoiceDate.setTime(date);
 	}
 
@@ -218,22 +311,64 @@ public class Invoice {
 	 * @param date	Date of payment
 	 */
 	public void setPayDate(int index, long date){
+		touch();
 		in_paymentList.get(index).setDate(date);
 	}
 
-	@Override
-	public String toString(){
-		String str = "Invoice number \t" + invoiceNo + ", date \t" + invoiceDate + ", outstanding \t\u20ac" + invoiceAmt + ":\n";
+	/**
+	 * Marks invoice as changed since last saved.
+	 */
+	private void touch(){
+		dirty = true;
+		version++;
+	}
+
+	/**
+	 * Checks if invoice has changed since last saved.
+	 * @return	True if changed
+	 */
+	public boolean isDirty(){
+		return dirty;
+	}
+
+	/**
+	 * Gets version of invoice, which goes up with every change.
+	 * @return	Version of invoice
+	 */
+	public int getVersion(){
+		return version;
+	}
+
+	/**
+	 * Marks invoice as saved.
+	 */
+	public void markSaved(){
+		dirty = false;
+	}
+
+	/**
+	 * Appends invoice details, procedures and payments for reports, as in toString.
+	 * @param buf	Buffer to append to
+	 * @return		The same buffer
+	 */
+	public StringBuilder appendTo(StringBuilder buf){
+		buf.append("Invoice number \t").append(invoiceNo).append(", date \t").append(invoiceDate);
+		Money.append(buf.append(", outstanding \t\u20ac"), invoiceAmt).append(":\n");
 		if(in_procList.size() > 0){
-			str += "Procedures:\n";
+			buf.append("Procedures:\n");
 			for(int a = 0; a < in_procList.size(); a++)
-				str += in_procList.get(a).toString() + "\n";
+				in_procList.get(a).appendTo(buf).append('\n');
 		}
 		if(in_paymentList.size() > 0){
-			str += "Payments:\n";
+			buf.append("Payments:\n");
 			for(int a = 0; a < in_paymentList.size(); a++)
-				str += in_paymentList.get(a).toString() + "\n";
+				in_paymentList.get(a).appendTo(buf).append('\n');
 		}
-		return str;
+		return buf;
+	}
+
+	@Override
+	public String toString(){
+		return appendTo(new StringBuilder()).toString();
 	}
 }
\ No newline at end of file
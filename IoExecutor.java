@@ -0,0 +1,72 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Responsible for running saves and reports in the background so the GUI stays responsive.
+ *
+ * Each task runs on its own virtual thread when the Java version has them, otherwise on a pool of daemon threads.
+ * Virtual threads are created through reflection so the application still runs on Java versions without them.
+ * Tasks work on copies of the patients and report back to the GUI thread themselves.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public final class IoExecutor {
+
+	final private static ExecutorService executor = newExecutor("Background I/O");
+
+	/**
+	 * Constructor is private as the class only has static methods.
+	 */
+	private IoExecutor(){
+	}
+
+	/**
+	 * Creates an executor running each task on its own virtual thread if available, otherwise on a pool of daemon threads.
+	 * Also used by the API server to run requests.
+	 * @param name	Name of the threads
+	 * @return		Executor for tasks
+	 */
+	static ExecutorService newExecutor(String name){
+		try{
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, name + " ", 0L);
+			ThreadFactory factory = (ThreadFactory)builder.getMethod("factory").invoke(virtual);
+			return (ExecutorService)Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+		}
+		catch (ReflectiveOperationException | RuntimeException e){
+			//No virtual threads, or only as a preview feature that is not enabled
+			return Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Runs a task in the background.
+	 * @param task	Task to run
+	 */
+	public static void submit(Runnable task){
+		executor.execute(task);
+	}
+
+	/**
+	 * Stops taking tasks and waits for running tasks to finish, such as a save started just before closing.
+	 * @param timeout	Longest time to wait in milliseconds
+	 * @return			True if all tasks finished
+	 */
+	public static boolean finish(long timeout){
+		executor.shutdown();
+		try{
+			return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,605 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Responsible for recording changes to patients between saves.
+ *
+ * Every change is appended to the journal file as a small entry, so the whole patient file
+ * only has to be rewritten when the journal is compacted. Entries are flushed to disk together
+ * once per commit window, so a crash loses at most the changes made within one window.
+ * When the journal is opened its entries are replayed on top of the patients read from the last save.
+ *
+ * The journal starts with the generation of the save it was started from, which the save also holds in its header
+ * and which goes up with every save. A journal whose generation does not match the save read was already included
+ * in that save, or follows another save, and is discarded. Copying or restoring the patient file keeps its generation.
+ * Each entry is stored as its length and checksum followed by its type and data,
+ * so an entry cut short by a crash is detected and ignored.
+ * Entries refer to patients and invoices by their numbers, and to procedures and payments by their index on the invoice.
+ * Entries adding a procedure or payment end with its number.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class Journal implements Closeable {
+
+	final static int MAGIC = 0x4A524E4C;	//"JRNL"
+
+	//Entry types
+	final static byte ADD_PAT = 1;
+	final static byte REMOVE_PAT = 2;
+	final static byte ADD_INV = 3;
+	final static byte REMOVE_INV = 4;
+	final static byte ADD_INV_PROC = 5;
+	final static byte REMOVE_INV_PROC = 6;
+	final static byte ADD_PAY = 7;
+	final static byte REMOVE_PAY = 8;
+
+	private String file;
+	private long window;	//Commit window in milliseconds, 0 to flush every entry
+	private FileOutputStream fileOut;
+	private DataOutputStream out;
+	private ByteArrayOutputStream entryBytes;	//Reused buffer for the entry being written
+	private DataOutputStream entry;
+	private CRC32 crc;
+	private ScheduledExecutorService committer;
+	private boolean unflushed;
+	private int entries;
+	private long length;	//Length of the journal file including entries not yet flushed
+	private boolean failed;
+
+	/**
+	 * Constructor that prepares a journal which is not yet open.
+	 * @param file		Name of journal file
+	 * @param window	Commit window in milliseconds
+	 */
+	private Journal(String file, long window){
+		this.file = file;
+		this.window = window;
+		entryBytes = new ByteArrayOutputStream(256);
+		entry = new DataOutputStream(entryBytes);
+		crc = new CRC32();
+		entries = 0;
+		unflushed = false;
+		failed = false;
+	}
+
+	/**
+	 * Replays a journal on top of patients and opens it for new entries.
+	 * If the journal cannot be opened, changes are not journaled until the next save.
+	 * @param file		Name of journal file
+	 * @param generation	Generation of the last save
+	 * @param window	Commit window in milliseconds, 0 to flush every entry
+	 * @param patients	Patients read from the last save by patient number
+	 * @return			Opened journal
+	 */
+	public static Journal open(String file, long generation, long window, Map<Integer, Patient> patients){
+		Journal journal = new Journal(file, window);
+		try{
+			long length = replay(file, generation, patients);
+			journal.start(generation, length);
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			journal.failed = true;
+		}
+		return journal;
+	}
+
+	/**
+	 * Opens the journal file, keeping the given length of valid entries or starting a new journal.
+	 * @param generation	Generation of the last save
+	 * @param length		Length of valid journal, 0 for a new journal
+	 * @throws IOException	If the journal cannot be opened
+	 */
+	private void start(long generation, long length) throws IOException {
+		if(length > 0){
+			fileOut = new FileOutputStream(file, true);
+			fileOut.getChannel().truncate(length);	//Drop any entry cut short by a crash
+			this.length = length;
+		}
+		else{
+			fileOut = new FileOutputStream(file);
+			DataOutputStream header = new DataOutputStream(fileOut);
+			header.writeInt(MAGIC);
+			header.writeLong(generation);
+			fileOut.getChannel().force(false);
+			this.length = 12;
+		}
+		out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+
+		//Flush entries once per commit window
+		if(window > 0 && committer == null){
+			committer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "Journal commit");
+				thread.setDaemon(true);
+				return thread;
+			});
+			committer.scheduleWithFixedDelay(this::commit, window, window, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Replays journal entries on top of patients.
+	 * @param file		Name of journal file
+	 * @param generation	Generation of the last save
+	 * @param patients	Patients read from the last save by patient number
+	 * @return			Length of the valid journal, 0 if there is none or it is out of date
+	 * @throws IOException	If the journal cannot be read
+	 */
+	static long replay(String file, long generation, Map<Integer, Patient> patients) throws IOException {
+		if(!new File(file).exists())
+			return 0;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))){
+			//Check header
+			try{
+				if(in.readInt() != MAGIC || in.readLong() != generation)
+					return 0;
+			}
+			catch (EOFException e){
+				return 0;
+			}
+
+			long length = 12;
+			CRC32 check = new CRC32();
+			byte[] bytes = new byte[256];
+
+			//Apply entries until the end of the journal or an incomplete entry
+			while(true){
+				int size;
+				long sum;
+				try{
+					size = in.readInt();
+					sum = in.readLong();
+					if(size < 1)
+						break;
+					if(size > bytes.length)
+						bytes = new byte[Math.max(size, bytes.length * 2)];
+					in.readFully(bytes, 0, size);
+				}
+				catch (EOFException e){
+					break;
+				}
+				check.reset();
+				check.update(bytes, 0, size);
+				if(check.getValue() != sum)
+					break;
+
+				//Stop at an entry that no longer fits the patients
+				try{
+					apply(new DataInputStream(new ByteArrayInputStream(bytes, 0, size)), patients);
+				}
+				catch (IndexOutOfBoundsException | IllegalArgumentException e){
+					e.printStackTrace();
+					break;
+				}
+				length += 12 + size;
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * Applies a single journal entry to patients.
+	 * @param in		Entry data
+	 * @param patients	Patients to apply the entry to by patient number
+	 * @throws IOException	If the entry cannot be read
+	 */
+	private static void apply(DataInputStream in, Map<Integer, Patient> patients) throws IOException {
+		byte type = in.readByte();
+		switch(type){
+		case ADD_PAT:{
+			Patient patient = new Patient(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+			patients.put(patient.getPatient(), patient);
+			break;
+		}
+		case REMOVE_PAT:
+			patients.remove(in.readInt());
+			break;
+		case ADD_INV:{
+			Patient patient = patient(patients, in.readInt());
+			int invoice = patient.addInvoice(in.readInt());
+			patient.setInvDate(invoice, in.readLong());
+			break;
+		}
+		case REMOVE_INV:
+			patient(patients, in.readInt()).removeInvoice(in.readInt());
+			break;
+		case ADD_INV_PROC:{
+			Patient patient = patient(patients, in.readInt());
+			int invoice = in.readInt();
+			String name = in.readUTF();
+			long cost = in.readLong();
+			patient.addProcedure(invoice, in.readInt(), name, cost);
+			break;
+		}
+		case REMOVE_INV_PROC:
+			patient(patients, in.readInt()).removeProcedure(in.readInt(), in.readInt());
+			break;
+		case ADD_PAY:{
+			Patient patient = patient(patients, in.readInt());
+			int invoice = in.readInt();
+			long amount = in.readLong();
+			long date = in.readLong();
+			patient.addPay(invoice, in.readInt(), amount);
+			patient.setPayDate(invoice, patient.getPayCount(invoice) - 1, date);
+			break;
+		}
+		case REMOVE_PAY:
+			patient(patients, in.readInt()).removePay(in.readInt(), in.readInt());
+			break;
+		default:
+			throw new IOException("Unknown journal entry " + type + ".");
+		}
+	}
+
+	/**
+	 * Gets a patient an entry refers to.
+	 * @param patients	Patients by patient number
+	 * @param number	Number of patient
+	 * @return			Patient with the number
+	 */
+	private static Patient patient(Map<Integer, Patient> patients, int number){
+		Patient patient = patients.get(number);
+		if(patient == null)
+			throw new IllegalArgumentException("No patient number " + number + ".");
+		return patient;
+	}
+
+	/**
+	 * Records a patient being added.
+	 * @param patient	Number of patient
+	 * @param name		Name of patient
+	 * @param address	Address of patient
+	 * @param phone		Phone number of patient
+	 * @param dentist	Dentist of patient
+	 */
+	public synchronized void addPat(int patient, String name, String address, String phone, String dentist){
+		try{
+			begin(ADD_PAT);
+			entry.writeInt(patient);
+			entry.writeUTF(name);
+			entry.writeUTF(address);
+			entry.writeUTF(phone);
+			entry.writeUTF(dentist);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records a patient being removed.
+	 * @param patient	Number of patient
+	 */
+	public synchronized void removePat(int patient){
+		try{
+			begin(REMOVE_PAT);
+			entry.writeInt(patient);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records an invoice being added to a patient.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param date		Date of invoice
+	 */
+	public synchronized void addInv(int patient, int invoice, long date){
+		try{
+			begin(ADD_INV);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			entry.writeLong(date);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records an invoice being removed from a patient.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 */
+	public synchronized void removeInv(int patient, int invoice){
+		try{
+			begin(REMOVE_INV);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records a procedure being added to an invoice.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
+	 * @param proc		Number of the catalogue procedure billed
+	 */
+	public synchronized void addInvProc(int patient, int invoice, String name, long cost, int proc){
+		try{
+			begin(ADD_INV_PROC);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			entry.writeUTF(name);
+			entry.writeLong(cost);
+			entry.writeInt(proc);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records a procedure being removed from an invoice.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param proc		Index of procedure
+	 */
+	public synchronized void removeInvProc(int patient, int invoice, int proc){
+		try{
+			begin(REMOVE_INV_PROC);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			entry.writeInt(proc);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records a payment being added to an invoice.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param amount	Amount of payment in cents
+	 * @param date		Date of payment
+	 * @param pay		Number of payment
+	 */
+	public synchronized void addPay(int patient, int invoice, long amount, long date, int pay){
+		try{
+			begin(ADD_PAY);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			entry.writeLong(amount);
+			entry.writeLong(date);
+			entry.writeInt(pay);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Records a payment being removed from an invoice.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param pay		Index of payment
+	 */
+	public synchronized void removePay(int patient, int invoice, int pay){
+		try{
+			begin(REMOVE_PAY);
+			entry.writeInt(patient);
+			entry.writeInt(invoice);
+			entry.writeInt(pay);
+			end();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Starts a new entry of the given type.
+	 * @param type	Type of entry
+	 * @throws IOException	If writing fails
+	 */
+	private void begin(byte type) throws IOException {
+		entryBytes.reset();
+		entry.writeByte(type);
+	}
+
+	/**
+	 * Appends the current entry to the journal.
+	 * Flushes straight away if there is no commit window.
+	 * @throws IOException	If writing fails
+	 */
+	private void end() throws IOException {
+		if(out == null)
+			return;
+		crc.reset();
+		crc.update(entryBytes.toByteArray());
+		out.writeInt(entryBytes.size());
+		out.writeLong(crc.getValue());
+		entryBytes.writeTo(out);
+		length += 12 + entryBytes.size();
+		entries++;
+		unflushed = true;
+		if(window <= 0)
+			commit();
+	}
+
+	/**
+	 * Flushes entries written since the last commit to disk.
+	 */
+	public synchronized void commit(){
+		if(out == null || !unflushed)
+			return;
+		try{
+			out.flush();
+			fileOut.getChannel().force(false);
+			unflushed = false;
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Starts a new empty journal after patients have been saved.
+	 * @param generation	Generation of the new save
+	 */
+	public synchronized void reset(long generation){
+		reset(generation, length);
+	}
+
+	/**
+	 * Marks the end of the entries written so far, such as when patients are copied for a save in the background.
+	 * @return	Position to pass to reset once the save is done
+	 */
+	public synchronized long mark(){
+		return out == null ? -1 : length;
+	}
+
+	/**
+	 * Starts a new journal after patients have been saved, keeping the entries written after a mark
+	 * as they are not in the save.
+	 * The new journal is written to a temporary file which then replaces the journal,
+	 * so the journal file never holds the new header without the kept entries.
+	 * @param generation	Generation of the new save
+	 * @param from			Position returned by mark when patients were copied for the save
+	 */
+	public synchronized void reset(long generation, long from){
+		try{
+			//Read entries written since the mark, unless journaling failed since
+			byte[] kept = new byte[0];
+			if(out != null && from >= 0 && from < length){
+				out.flush();
+				kept = new byte[(int)(length - from)];
+				try (RandomAccessFile in = new RandomAccessFile(file, "r")){
+					in.seek(from);
+					in.readFully(kept);
+				}
+			}
+
+			closeFile();
+			entries = 0;
+			failed = false;
+
+			//Write the header and kept entries of the new journal
+			Path temp = Paths.get(file + ".tmp");
+			try (FileOutputStream tempOut = new FileOutputStream(temp.toFile())){
+				DataOutputStream header = new DataOutputStream(new BufferedOutputStream(tempOut, 65536));
+				header.writeInt(MAGIC);
+				header.writeLong(generation);
+				header.write(kept);
+				header.flush();
+				tempOut.getChannel().force(false);
+			}
+			Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			start(generation, 12 + kept.length);
+
+			//Count kept entries
+			ByteBuffer sizes = ByteBuffer.wrap(kept);
+			for(int pos = 0; pos < kept.length; pos += 12 + sizes.getInt(pos))
+				entries++;
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Gets amount of entries written since the journal was opened or reset.
+	 * @return	Entry count
+	 */
+	public synchronized int getEntries(){
+		return entries;
+	}
+
+	/**
+	 * Checks if journaling has stopped after an error.
+	 * Journaling resumes once patients are saved.
+	 * @return	True if an error occurred
+	 */
+	public synchronized boolean hasFailed(){
+		return failed;
+	}
+
+	/**
+	 * Commits remaining entries and closes the journal.
+	 */
+	@Override
+	public synchronized void close(){
+		if(committer != null){
+			committer.shutdown();
+			committer = null;
+		}
+		try{
+			closeFile();
+		}
+		catch (IOException e){
+			fail(e);
+		}
+	}
+
+	/**
+	 * Flushes and closes the journal file.
+	 * @throws IOException	If flushing or closing fails
+	 */
+	private void closeFile() throws IOException {
+		if(out != null){
+			DataOutputStream closing = out;
+			out = null;
+			closing.flush();
+			fileOut.getChannel().force(false);
+			closing.close();
+		}
+	}
+
+	/**
+	 * Stops journaling after an error.
+	 * @param e	Error that occurred
+	 */
+	private void fail(IOException e){
+		e.printStackTrace();
+		failed = true;
+		out = null;
+
+		//Let go of the file, which is opened again by the next reset
+		if(fileOut != null){
+			try{
+				fileOut.close();
+			}
+			catch (IOException closing){
+				closing.printStackTrace();
+			}
+			fileOut = null;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/**
+ * Responsible for writing reports as JSON lines, with one JSON object per patient holding their invoices,
+ * procedures and payments. Amounts are numbers in euro and dates are written as yyyy-MM-dd.
+ * Report text such as totals is left out. In the aging report each object holds the age bucket of the patient.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class JsonReportWriter implements ReportWriter {
+
+	@Override
+	public String getName(){
+		return "JSON lines";
+	}
+
+	@Override
+	public void begin(StringBuilder buf, String title, boolean buckets){
+	}
+
+	@Override
+	public void line(StringBuilder buf, String line){
+	}
+
+	@Override
+	public void patient(StringBuilder buf, Patient patient, String bucket, boolean between){
+		details(buf, patient);
+		if(bucket != null)
+			string(buf.append(",\"bucket\":"), bucket);
+
+		//Write invoice details
+		buf.append(",\"invoices\":[");
+		int[] invoices = patient.getInvNums();
+		for(int a = 0; a < invoices.length; a++){
+			if(a != 0)
+				buf.append(',');
+			invoice(buf, patient, invoices[a]);
+		}
+		buf.append("]}\n");
+	}
+
+	/**
+	 * Appends the details of a patient as the start of a JSON object, leaving it open for more fields.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient to append
+	 * @return			The same buffer
+	 */
+	static StringBuilder details(StringBuilder buf, Patient patient){
+		buf.append("{\"patient\":").append(patient.getPatient());
+		string(buf.append(",\"name\":"), patient.getName());
+		string(buf.append(",\"address\":"), patient.getAddress());
+		string(buf.append(",\"phone\":"), patient.getNum());
+		string(buf.append(",\"dentist\":"), patient.getDentist());
+		Money.append(buf.append(",\"outstanding\":"), patient.getOutstanding());
+		buf.append(",\"oldest_unpaid\":");
+		if(patient.getOldestUnpaid() == Patient.NONE)
+			buf.append("null");
+		else
+			ReportEngine.appendDate(buf.append('"'), patient.getOldestUnpaid()).append('"');
+		return buf;
+	}
+
+	/**
+	 * Appends an invoice of a patient with its procedures and payments as a JSON object.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient of invoice
+	 * @param inv		Number of invoice
+	 * @return			The same buffer
+	 */
+	static StringBuilder invoice(StringBuilder buf, Patient patient, int inv){
+		buf.append("{\"invoice\":").append(inv);
+		ReportEngine.appendDate(buf.append(",\"date\":\""), patient.getInvTime(inv)).append('"');
+		Money.append(buf.append(",\"outstanding\":"), patient.getInvOut(inv));
+
+		//Write procedure details
+		buf.append(",\"procedures\":[");
+		for(int b = 0; b < patient.getProcCount(inv); b++){
+			if(b != 0)
+				buf.append(',');
+			string(buf.append("{\"name\":"), patient.getProcName(inv, b));
+			Money.append(buf.append(",\"cost\":"), patient.getProcCost(inv, b)).append('}');
+		}
+
+		//Write payment details
+		buf.append("],\"payments\":[");
+		for(int b = 0; b < patient.getPayCount(inv); b++){
+			if(b != 0)
+				buf.append(',');
+			ReportEngine.appendDate(buf.append("{\"date\":\""), patient.getPayTime(inv, b)).append('"');
+			Money.append(buf.append(",\"amount\":"), patient.getPayAmt(inv, b)).append('}');
+		}
+		return buf.append("]}");
+	}
+
+	/**
+	 * Appends text as a JSON string, escaping quotes, backslashes and control characters.
+	 * @param buf	Buffer to append to
+	 * @param str	Text to append
+	 * @return		The same buffer
+	 */
+	static StringBuilder string(StringBuilder buf, String str){
+		buf.append('"');
+		for(int a = 0; a < str.length(); a++){
+			char c = str.charAt(a);
+			if(c == '"' || c == '\\')
+				buf.append('\\').append(c);
+			else if(c == '\n')
+				buf.append("\\n");
+			else if(c == '\r')
+				buf.append("\\r");
+			else if(c == '\t')
+				buf.append("\\t");
+			else if(c < 0x20){
+				String hex = Integer.toHexString(c);
+				buf.append("\\u");
+				for(int b = hex.length(); b < 4; b++)
+					buf.append('0');
+				buf.append(hex);
+			}
+			else
+				buf.append(c);
+		}
+		return buf.append('"');
+	}
+}
\ No newline at end of file
@@ -1,44 +1,123 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import javafx.application.Application;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 
 /**
  * Responsible for main behavior/functionality and maintaining references to data objects.
  * 
+ * Patients may be changed and read from several threads at once, such as the GUI and the API.
+ * A change holds the lock of the patient it changes from PatientLocks, so changes to different patients
+ * run side by side and reads of other patients never wait for it.
+ * 
  * @author	Kamil Markiewicz
  * @version	2.0
  */
 public class MainApplication {
 
-	private static ArrayList<Patient> patientList;
-	private static ArrayList<Procedure> procedureList;
-	private static ArrayList<Dentist> dentistList;
-	private static GUI gui;		//Allows for communication back to the GUI
+	private static ConcurrentSkipListMap<Integer, Patient> patientMap;	//Patients by patient number, which is the order they were added
+	final private static AtomicInteger patCount = new AtomicInteger();	//Patients in patientMap, which is slow to count
+	private static ProcedureCatalogue procedures;
+	private static CopyOnWriteArrayList<Dentist> dentistList;
+	private static ConcurrentHashMap<String, Dentist> dentistIndex;	//Dentists by name for login and registration checks
+	private static ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> dentistPats;	//Patient numbers of each dentist in the order they were added
+	final private static LongAdder totalOutstanding = new LongAdder();	//Outstanding amount of all patients in cents, kept up to date as patients change
+	private static AgingIndex aging;	//Patients with unpaid invoices by date of their oldest unpaid invoice
+	private static ReportEngine reports;	//Writes reports from sorted copies of the patients
+	private static SearchIndex search;	//Finds patients by name, address or phone number
+	private static StatusSink sink;		//Allows for communication back to the GUI or console, null for none
 	private static String dentist;
+	private static boolean binaryStore;	//Set when patients are kept in the binary store
+	private static SegmentedPatientStore segmentStore;	//Set when patients are kept in segments
 	final private static String PROC_FILE = "Procedures.txt";
 	final private static String PAT_FILE = "Patients.txt";
+	final private static String PAT_BIN_FILE = "Patients.dat";	//Binary store of generation 0, later saves write Patients.1.dat and onwards
+	private static volatile String binFile = PAT_BIN_FILE;	//Binary store file patients were read from or last saved to
+	private static long generation;	//Generation of the last save, also written into the journal so it is only replayed on that save
+	final private static String PAT_DIR = "Patients";
+	final private static int SEGMENT_SIZE = Integer.getInteger("dentistry.segment.size", 256);	//Patients per segment
 	final private static String DENT_FILE = "Dentists.txt";
+	final private static String ID_FILE = "Ids.txt";
+	final private static String PROC_VERSION = "v2";	//First line of procedure files that save procedure numbers
+	final private static String JOURNAL_FILE = "Patients.journal";
+	final private static long JOURNAL_WINDOW = Long.getLong("dentistry.journal.window", 100);		//Commit window in milliseconds
+	final private static int JOURNAL_COMPACT = Integer.getInteger("dentistry.journal.compact", 10000);	//Entries before patients are saved
+	private static Journal journal;		//Records changes to patients between saves
+	final private static AtomicBoolean saving = new AtomicBoolean();		//Set while patients are saved in the background
+	final private static CopyOnWriteArrayList<StoreListener> listeners = new CopyOnWriteArrayList<StoreListener>();	//Told about every change to patients
+	private static volatile boolean saveAgain;	//Set when a save is asked for while another save is running
+	final private static long CLOSE_WAIT = Long.getLong("dentistry.close.wait", 60000);	//Longest wait in milliseconds for background saves when closing
+	final private static int API_PORT = Integer.getInteger("dentistry.api.port", -1);	//Port of the API server run alongside the GUI, -1 for none
+	private static ApiServer api;		//Serves patients to other tools while the GUI runs, null for none
 
 	/**
-	 * Initializes ArrayLists, loads data from files and launches GUI.
+	 * Loads data from files and launches GUI, serving patients over HTTP as well when an API port is set.
 	 * 
 	 * @param args	Unused
 	 */
 	public static void main(String[] args){
+		load();
+
+		//Serve the same patients the GUI changes
+		startApi();
+
+		//Launch GUI
+		GUI.open(args);
+
+		close();
+	}
+
+	/**
+	 * Initializes ArrayLists and loads data from files, without needing a GUI.
+	 */
+	public static void load(){
+		load(false);
+	}
+
+	/**
+	 * Initializes ArrayLists and loads data from files, without needing a GUI.
+	 * A read-only load replays the journal without opening it, so it can run beside another process using the same files.
+	 * Patients must not be changed or saved after a read-only load.
+	 * 
+	 * @param readOnly	Flag for leaving the files as they are
+	 */
+	public static void load(boolean readOnly){
 		dentist = "";
 		//Initialize ArrayLists
-		patientList = new ArrayList<Patient>();
-		procedureList = new ArrayList<Procedure>();
-		dentistList = new ArrayList<Dentist>();
+		patientMap = new ConcurrentSkipListMap<Integer, Patient>();
+		procedures = new ProcedureCatalogue();
+		dentistList = new CopyOnWriteArrayList<Dentist>();
+		dentistIndex = new ConcurrentHashMap<String, Dentist>();
+
+		//Load numbers already handed out so they are never reused
+		try{
+			IdAllocator.load(ID_FILE);
+		}catch (IOException e){
+			e.printStackTrace();
+		}
 
 		//Read procedure data from file.
 		readProcs();
@@ -46,20 +125,60 @@ public class MainApplication {
 		//Read patients from file
 		readPats();
 
+		//Replay changes made since patients were last saved
+		if(readOnly){
+			journal = null;
+			try{
+				Journal.replay(JOURNAL_FILE, generation, patientMap);
+			}catch (IOException e){
+				e.printStackTrace();
+			}
+		}
+		else
+			journal = Journal.open(JOURNAL_FILE, generation, JOURNAL_WINDOW, patientMap);
+
+		//Index patients by dentist
+		indexPats();
+
 		//Read dentists from file
 		readDents();
+	}
 
-		//Launch GUI
-		Application.launch(GUI.class, args);
+	/**
+	 * Lets background saves and reports finish, then commits remaining changes.
+	 * Called once the GUI is closed or a batch job is done.
+	 */
+	public static void close(){
+		if(api != null){
+			api.stop();
+			api = null;
+		}
+		IoExecutor.finish(CLOSE_WAIT);
+		if(journal != null)
+			journal.close();
 	}
 
 	/**
-	 * Establishes reference to GUI.
+	 * Starts the API server on the API port, if one is set.
+	 */
+	private static void startApi(){
+		if(API_PORT < 0)
+			return;
+		try{
+			api = new ApiServer(API_PORT);
+			api.start();
+		}catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Establishes reference to GUI, or to another sink for status messages such as a console.
 	 * 
-	 * @param guiRef Reference to GUI
+	 * @param sinkRef	Reference to sink, null to drop status messages
 	 */
-	public static void setGUI(GUI guiRef){
-		gui = guiRef;
+	public static void setSink(StatusSink sinkRef){
+		sink = sinkRef;
 	}
 
 	/**
@@ -75,19 +194,15 @@ public class MainApplication {
 
 		//Set variables
 		String str = "";
-		int index = -1;
 
 		//Check if the dentist name is registered
-		for(int a = 0; a < dentistList.size(); a++){
-			if(dentistList.get(a).getName().equals(name)){
-				found = true;
-				index = a;
-			}
-		}
+		Dentist dent = dentistIndex.get(name);
+		if(dent != null)
+			found = true;
 
 		//If name is registered check if password matches
 		if(found){
-			if(dentistList.get(index).getPassword().equals(pass))
+			if(dent.getPassword().equals(pass))
 				valid = true;
 			if(valid)
 				str += "Logged in as " + name + ".";
@@ -102,7 +217,7 @@ public class MainApplication {
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 
 		//If valid set active dentist
 		if(valid)
@@ -125,11 +240,9 @@ public class MainApplication {
 		String str = "";	//Prepare log String
 
 		//Check if dentist already exists
-		for(int a = 0; a < dentistList.size(); a++){
-			if(dentistList.get(a).getName().equals(name)){
-				valid = false;
-				str += "This Dentist already exists. ";
-			}
+		if(dentistIndex.containsKey(name)){
+			valid = false;
+			str += "This Dentist already exists. ";
 		}
 
 		//Check if user has not left any fields blank
@@ -150,14 +263,14 @@ public class MainApplication {
 
 		//If valid, register user
 		if(valid){
-			dentistList.add(new Dentist(name, address, pass));
+			addDent(new Dentist(name, address, pass));
 			str += "Dentist " + name + " registered successfully.";
 			//Save dentists to file
 			writeDents();
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 		return valid;
 	}
 
@@ -173,11 +286,9 @@ public class MainApplication {
 		String str = "";	//Prepare log String
 
 		//Check if procedure already exists
-		for(int a = 0; a < procedureList.size(); a++){
-			if(procedureList.get(a).getProcName().equals(name)){
-				valid = false;
-				str += "This procedure already exists. ";
-			}
+		if(procedures.contains(name)){
+			valid = false;
+			str += "This procedure already exists. ";
 		}
 
 		//Check if user has left any fields blank
@@ -193,20 +304,29 @@ public class MainApplication {
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 		return valid;
 	}
 
 	/**
-	 * Checks if user has left any fields blank when editing procedure.
+	 * Checks if user has left any fields blank when editing procedure
+	 * and that the new name is not taken by another procedure.
 	 * 
+	 * @param index	Index of procedure
 	 * @param name	Name of procedure
 	 * @param cost	Cost of procedure
 	 * @return		Validity of procedure
 	 */
-	public static boolean checkEditProc(String name, String cost){
+	public static boolean checkEditProc(int index, String name, String cost){
 		boolean valid = true;
 		String str = "";
+
+		//Check if another procedure already has this name
+		Procedure other = procedures.getByName(name);
+		if(other != null && other != procedures.get(index)){
+			valid = false;
+			str += "This procedure already exists. ";
+		}
 		if(name.length() < 1){
 			valid = false;
 			str += "Name is mandatory. ";
@@ -217,7 +337,7 @@ public class MainApplication {
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 		return valid;
 	}
 
@@ -238,7 +358,7 @@ public class MainApplication {
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 		return valid;
 	}
 
@@ -270,12 +390,27 @@ public class MainApplication {
 
 		//If valid add patient
 		if(valid){
-			patientList.add(new Patient(name, address, phone,dentist));
+			Patient patient = new Patient(name, address, phone,dentist);
+			Lock lock = PatientLocks.write(patient.getPatient());
+			lock.lock();
+			try{
+				patientMap.put(patient.getPatient(), patient);
+				patCount.incrementAndGet();
+				dentistPats(dentist).add(patient.getPatient());
+				search.add(patient);
+				reports.patientsChanged();
+				journal.addPat(patient.getPatient(), name, address, phone, dentist);
+			}
+			finally{
+				lock.unlock();
+			}
+			compactJournal();
+			fire(new StoreEvent(StoreEvent.PAT_ADDED, patient.getPatient(), -1, -1));
 			str += "Patient " + name + " added successfully.";
 		}
 
 		//Update log for GUI
-		gui.setLog(str);
+		log(str);
 		return valid;
 	}
 
@@ -289,42 +424,69 @@ public class MainApplication {
 	public static boolean addProc(String name, String cost){
 		boolean valid = checkProc(name, cost);	//Check if procedure is valid
 
-		//If valid try to parse cost into double. If parsed, add procedure to system and write to file
+		//If valid try to parse cost into cents
+		long price = 0;
 		if(valid){
 			try{
-				double price = Double.parseDouble(cost);
-				procedureList.add(new Procedure(name, price));
-				writeProcs();
+				price = Money.parse(cost);
 			}
-			catch(Exception e){
+			catch(NumberFormatException e){
 				valid = false;
-				gui.setLog("Enter a double value for cost.");
+				log("Enter an amount such as 12.50 for cost.");
 			}
 		}
+
+		//If parsed, add procedure to system and write to file
+		if(valid){
+			procedures.add(name, price);
+			writeProcs();
+		}
 		return valid;
 	}
 
 	/**
 	 * Checks and adds payment to patient invoice if valid.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param amount	Amount of payment
 	 * @return			Validity of payment
 	 */
 	public static boolean addPay(int index, int invoice, String amount){
 		boolean valid = checkPay(amount);//Check if payment is valid
 
-		//If valid try to parse amount into double. If parsed, add payment to patient invoice.
+		//If valid try to parse amount into cents
+		long price = 0;
 		if(valid){
 			try{
-				double price = Double.parseDouble(amount);
-				patientList.get(index).addPay(invoice, price);
+				price = Money.parse(amount);
 			}
-			catch(Exception e){
+			catch(NumberFormatException e){
 				valid = false;
-				gui.setLog("Enter a double value for cost.");
+				log("Enter an amount such as 12.50 for payment.");
+			}
+		}
+
+		//If parsed, add payment to patient invoice
+		if(valid){
+			int pay;	//Index of the added payment on the invoice
+			Lock lock = PatientLocks.write(index);
+			lock.lock();
+			try{
+				Patient patient = patient(index);
+				long before = patient.getOutstanding();
+				patient.addPay(invoice, price);
+				totalOutstanding.add(patient.getOutstanding() - before);
+				aging.update(index, patient.getOldestUnpaid());
+				reports.balancesChanged();
+				pay = patient.getPayCount(invoice)-1;
+				journal.addPay(index, invoice, price, patient.getPayTime(invoice, pay), patient.getPayNum(invoice, pay));
 			}
+			finally{
+				lock.unlock();
+			}
+			compactJournal();
+			fire(new StoreEvent(StoreEvent.PAY_ADDED, index, invoice, pay));
 		}
 		return valid;
 	}
@@ -338,53 +500,245 @@ public class MainApplication {
 		return dentist;
 	}
 
+	/**
+	 * Adds a listener to be told about every change to patients.
+	 * 
+	 * @param listener	Listener to add
+	 */
+	public static void addListener(StoreListener listener){
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener so it is no longer told about changes.
+	 * 
+	 * @param listener	Listener to remove
+	 */
+	public static void removeListener(StoreListener listener){
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Tells listeners about a change to patients.
+	 * 
+	 * @param event	Change made
+	 */
+	private static void fire(StoreEvent event){
+		for(StoreListener listener : listeners)
+			listener.changed(event);
+	}
+
+	/**
+	 * Gets numbers of the patients of the active dentist.
+	 * 
+	 * @return	Patient numbers of the active dentist in the order patients were added
+	 */
+	public static List<Integer> getActivePats(){
+		return Collections.unmodifiableList(new ArrayList<Integer>(dentistPats(dentist)));
+	}
+
+	/**
+	 * Finds patients of the active dentist by any part of their name, address or phone number.
+	 * 
+	 * @param words	Words to search for, each of which has to match
+	 * @return		Numbers of matching patients in the order patients were added, or all patients of the active dentist if no words are given
+	 */
+	public static List<Integer> searchPats(String words){
+		if(words.trim().isEmpty())
+			return getActivePats();
+		return searchPats(words, dentist);
+	}
+
+	/**
+	 * Finds patients by any part of their name, address or phone number.
+	 * 
+	 * @param words	Words to search for, each of which has to match
+	 * @param dent	Name of dentist whose patients to search, null for all patients
+	 * @return		Numbers of matching patients in the order patients were added
+	 */
+	public static List<Integer> searchPats(String words, String dent){
+		Collection<Integer> pats = dent == null ? null : dentistPats.get(dent);
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		for(Integer patient : search.search(words)){
+			if(dent == null || pats != null && pats.contains(patient))
+				found.add(patient);
+		}
+		return found;
+	}
+
+	/**
+	 * Gets a page of patient numbers in the order patients were added, such as for the API.
+	 * 
+	 * @param dent		Name of dentist whose patients to get, null for all patients
+	 * @param offset	Amount of patients to skip
+	 * @param limit		Most patients to get
+	 * @return			Numbers of patients on the page
+	 */
+	public static List<Integer> getPatNums(String dent, int offset, int limit){
+		Collection<Integer> pats = dent == null ? patientMap.keySet() : dentistPats.get(dent);
+		ArrayList<Integer> page = new ArrayList<Integer>();
+		if(pats == null)
+			return page;
+		Iterator<Integer> it = pats.iterator();
+		for(int a = 0; a < offset && it.hasNext(); a++)
+			it.next();
+		while(page.size() < limit && it.hasNext())
+			page.add(it.next());
+		return page;
+	}
+
+	/**
+	 * Gets amount of patients of a dentist.
+	 * 
+	 * @param dent	Name of dentist, null for all patients
+	 * @return		Amount of patients
+	 */
+	public static int getPatCount(String dent){
+		if(dent == null)
+			return patCount.get();
+		Collection<Integer> pats = dentistPats.get(dent);
+		return pats == null ? 0 : pats.size();
+	}
+
+	/**
+	 * Gets a patient by number, such as for the API.
+	 * The patient is only read while holding its read lock from PatientLocks.
+	 * 
+	 * @param number	Patient number
+	 * @return			Patient, null if there is no such patient
+	 */
+	public static Patient getPatient(int number){
+		return patientMap.get(number);
+	}
+
+	/**
+	 * Gets the patient numbers of a dentist from the index, adding an empty entry for a new dentist.
+	 * 
+	 * @param dent	Name of dentist
+	 * @return		Patient numbers of the dentist
+	 */
+	private static ConcurrentSkipListSet<Integer> dentistPats(String dent){
+		return dentistPats.computeIfAbsent(dent, name -> new ConcurrentSkipListSet<Integer>());
+	}
+
+	/**
+	 * Rebuilds the index of patients by dentist, the aging index, the search index
+	 * and the outstanding amount of all patients from the patients.
+	 */
+	private static void indexPats(){
+		dentistPats = new ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>>();
+		aging = new AgingIndex();
+		search = new SearchIndex();
+		totalOutstanding.reset();
+		patCount.set(patientMap.size());
+		for(Patient patient : patientMap.values()){
+			dentistPats(patient.getDentist()).add(patient.getPatient());
+			search.add(patient);
+			aging.update(patient.getPatient(), patient.getOldestUnpaid());
+			totalOutstanding.add(patient.getOutstanding());
+		}
+		reports = new ReportEngine(patientMap, aging);
+	}
+
+	/**
+	 * Gets outstanding amount of all patients in the system.
+	 * 
+	 * @return	Outstanding amount of all patients in cents
+	 */
+	public static long getTotalOutstanding(){
+		return totalOutstanding.sum();
+	}
+
+	/**
+	 * Gets a patient by patient number.
+	 * 
+	 * @param number	Number of patient
+	 * @return			Patient with the number
+	 */
+	private static Patient patient(int number){
+		Patient patient = patientMap.get(number);
+		if(patient == null)
+			throw new IllegalArgumentException("No patient number " + number + ".");
+		return patient;
+	}
+
+	/**
+	 * Reads from a patient while holding its read lock, so no other thread changes it meanwhile.
+	 * 
+	 * @param number	Number of patient
+	 * @param getter	Reads from the patient
+	 * @return			What was read
+	 */
+	private static <T> T read(int number, Function<Patient, T> getter){
+		Patient patient = patient(number);
+		Lock lock = PatientLocks.read(number);
+		lock.lock();
+		try{
+			return getter.apply(patient);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the patients in the system with the given patients.
+	 * 
+	 * @param patients	Patients in the order they were added
+	 */
+	private static void setPats(List<Patient> patients){
+		patientMap = new ConcurrentSkipListMap<Integer, Patient>();
+		for(int a = 0; a < patients.size(); a++)
+			patientMap.put(patients.get(a).getPatient(), patients.get(a));
+	}
+
 	/**
 	 * Gets patient count.
 	 * 
 	 * @return 	Number of patients in the system.
 	 */
 	public static int getPatCount(){
-		return patientList.size();
+		return patCount.get();
 	}
 
 	/**
 	 * Gets name of patient.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 * @return		Name of patient
 	 */
 	public static String getPatName(int index){
-		return patientList.get(index).getName();
+		return patient(index).getName();
 	}
 
 	/**
 	 * Gets address of patient.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 * @return		Address of patient
 	 */
 	public static String getPatAddress(int index){
-		return patientList.get(index).getAddress();
+		return patient(index).getAddress();
 	}
 
 	/**
 	 * Gets phone number of patient.
 	 * 
-	 * @param index Index of patient
+	 * @param index Number of patient
 	 * @return		Phone number of patient
 	 */
 	public static String getPatNum(int index){
-		return patientList.get(index).getNum();
+		return patient(index).getNum();
 	}
 
 	/**
 	 * Gets dentist of patient.
 	 * 
-	 * @param index Index of patient
+	 * @param index Number of patient
 	 * @return		Dentist of patient
 	 */
 	public static String getPatDentist(int index){
-		return patientList.get(index).getDentist();
+		return patient(index).getDentist();
 	}
 
 	/**
@@ -393,7 +747,7 @@ public class MainApplication {
 	 * @return	Count of procedures in the system
 	 */
 	public static int getProcCount(){
-		return procedureList.size();
+		return procedures.size();
 	}
 
 	/**
@@ -403,127 +757,215 @@ public class MainApplication {
 	 * @return		Name of procedure
 	 */
 	public static String getProcName(int index){
-		return procedureList.get(index).getProcName();
+		return procedures.get(index).getProcName();
 	}
 
 	/**
 	 * Gets procedure cost.
 	 * 
 	 * @param index	Index of procedure
-	 * @return		Cost of procedure
+	 * @return		Cost of procedure in cents
+	 */
+	public static long getProcCost(int index){
+		return procedures.get(index).getProcCost();
+	}
+
+	/**
+	 * Gets procedure number, which stays the same as procedures are added and removed.
+	 * 
+	 * @param index	Index of procedure
+	 * @return		Number of procedure
 	 */
-	public static double getProcCost(int index){
-		return procedureList.get(index).getProcCost();
+	public static int getProcNum(int index){
+		return procedures.get(index).getProc();
+	}
+
+	/**
+	 * Gets procedure number from procedure name.
+	 * 
+	 * @param name	Name of procedure
+	 * @return		Number of procedure, or -1 if there is no procedure with the name
+	 */
+	public static int getProcNum(String name){
+		Procedure proc = procedures.getByName(name);
+		if(proc == null)
+			return -1;
+		return proc.getProc();
+	}
+
+	/**
+	 * Gets procedure name from procedure number.
+	 * 
+	 * @param number	Number of procedure
+	 * @return			Name of procedure, or null if there is no procedure with the number
+	 */
+	public static String getProcNameByNum(int number){
+		Procedure proc = procedures.getByNumber(number);
+		if(proc == null)
+			return null;
+		return proc.getProcName();
 	}
 
 	/**
 	 * Gets invoice count.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 * @return		Count of invoices of patient
 	 */
 	public static int getInvCount(int index){
-		return patientList.get(index).getInvCount();
+		return read(index, patient -> patient.getInvCount());
 	}
 
 	/**
-	 * Gets invoice number.
+	 * Gets numbers of all invoices of a patient.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
-	 * @return			Invoice number
+	 * @param index	Number of patient
+	 * @return		Invoice numbers in the order invoices were added
 	 */
-	public static int getInvNum(int index, int invoice){
-		return patientList.get(index).getInvNum(invoice);
+	public static int[] getInvNums(int index){
+		return read(index, patient -> patient.getInvNums());
 	}
 
 	/**
 	 * Gets outstanding amount from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
-	 * @return			Outstanding amount
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
+	 * @return			Outstanding amount in cents
 	 */
-	public static double getInvOut(int index, int invoice){
-		return patientList.get(index).getInvOut(invoice);
+	public static long getInvOut(int index, int invoice){
+		return read(index, patient -> patient.getInvOut(invoice));
 	}
 
 	/**
 	 * Gets procedure count from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @return			Procedure count of invoice
 	 */
 	public static int getInvProcCount(int index, int invoice){
-		return patientList.get(index).getProcCount(invoice);
+		return read(index, patient -> patient.getProcCount(invoice));
 	}
 
 	/**
 	 * Gets procedure cost from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param proc		Index of procedure
-	 * @return			Cost of procedure
+	 * @return			Cost of procedure in cents
 	 */
-	public static double getInvProcCost(int index, int invoice, int proc){
-		return patientList.get(index).getProcCost(invoice, proc);
+	public static long getInvProcCost(int index, int invoice, int proc){
+		return read(index, patient -> patient.getProcCost(invoice, proc));
 	}
 
 	/**
 	 * Gets procedure name from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param proc		Index of procedure
 	 * @return			Name of procedure
 	 */
 	public static String getInvProcName(int index, int invoice, int proc){
-		return patientList.get(index).getProcName(invoice, proc);
+		return read(index, patient -> patient.getProcName(invoice, proc));
 	}
 
 	/**
 	 * Gets count of payments from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @return			Count of payments
 	 */
 	public static int getPayCount(int index, int invoice){
-		return patientList.get(index).getPayCount(invoice);
+		return read(index, patient -> patient.getPayCount(invoice));
 	}
 
 	/**
 	 * Gets payment date from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param pay		Index of payment
 	 * @return			Payment date
 	 */
 	public static String getPayDate(int index, int invoice, int pay){
-		return patientList.get(index).getPayDate(invoice, pay);
+		return read(index, patient -> patient.getPayDate(invoice, pay));
 	}
 
 	/**
 	 * Gets payment amount from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param pay		Index of payment
-	 * @return			Payment amount
+	 * @return			Payment amount in cents
 	 */
-	public static double getPayAmt(int index, int invoice, int pay){
-		return patientList.get(index).getPayAmt(invoice, pay);
+	public static long getPayAmt(int index, int invoice, int pay){
+		return read(index, patient -> patient.getPayAmt(invoice, pay));
 	}
 
 	/**
-	 * Reads patients from a file and loads into ArrayList
+	 * Reads patients from a file and loads into ArrayList.
+	 * Reads the segmented store if there is one, then the newest binary store, otherwise the text file.
 	 */
 	public static void readPats(){
+		//Try to read patients
+		generation = 0;
+		try{
+			String latest = latestBinFile();
+			if(SegmentedPatientStore.exists(PAT_DIR)){
+				segmentStore = new SegmentedPatientStore(PAT_DIR, SEGMENT_SIZE);
+				setPats(segmentStore.read());
+				generation = segmentStore.getGeneration();
+			}
+			else if(latest != null){
+				binaryStore = true;
+				binFile = latest;
+				setPats(BinaryPatientReader.map(latest));
+				generation = BinaryPatientReader.readGeneration(latest);
+			}
+			else{
+				setPats(readPats(PAT_FILE));
+				generation = readGeneration(PAT_FILE);
+			}
+		}catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the generation of the save from the header of a text file.
+	 * Files from before generations were saved are generation 0.
+	 * 
+	 * @param file	Name of file to read from
+	 * @return		Generation of the save
+	 * @throws IOException	If the file cannot be read
+	 */
+	public static long readGeneration(String file) throws IOException{
+		try (BufferedReader br = new BufferedReader(new FileReader(file))){
+			if(PatientWriter.VERSION.equals(br.readLine()))
+				return Long.parseLong(br.readLine());
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads patients from a text file.
+	 * Files from before patient and invoice numbers were saved give patients and invoices new numbers.
+	 * 
+	 * @param file	Name of file to read from
+	 * @return		Patients read from the file
+	 * @throws IOException	If the file cannot be read
+	 */
+	public static ArrayList<Patient> readPats(String file) throws IOException{
 		//Set variables
 		int patients = 0;
+		boolean numbered = false;	//Set when the file has patient and invoice numbers
+		boolean itemsNumbered = false;	//Set when the file also has procedure and payment numbers
+		int number = 0;
 		String name = "";
 		String address = "";
 		String phoneNo = "";
@@ -532,21 +974,33 @@ public class MainApplication {
 		long invDate = 0;
 		int procedures = 0;
 		String procName = "";
-		double procCost = 0;
+		long procCost = 0;
 		int payments = 0;
-		double payment = 0;
+		long payment = 0;
 		long paymentDate = 0;
+		ArrayList<Patient> list = new ArrayList<Patient>();
 
-		//Try to read patients
-		try (BufferedReader br = new BufferedReader(new FileReader(PAT_FILE))){
+		//Read patients
+		try (BufferedReader br = new BufferedReader(new FileReader(file))){
 			String nextLine;
 
-			//Get patient count
+			//Get format version, generation and patient count
 			nextLine = br.readLine();
+			if(nextLine.equals(PatientWriter.VERSION) || nextLine.equals(PatientWriter.VERSION_2)){
+				numbered = true;
+				itemsNumbered = nextLine.equals(PatientWriter.VERSION);
+				if(itemsNumbered)
+					br.readLine();	//Generation is read by readGeneration
+				nextLine = br.readLine();
+			}
 			patients = Integer.parseInt(nextLine);
 
 			//Get patient data
 			for(int a = 0; a < patients; a++){
+				if(numbered){
+					nextLine = br.readLine();
+					number = Integer.parseInt(nextLine);
+				}
 				nextLine = br.readLine();
 				name = nextLine;
 				nextLine = br.readLine();
@@ -557,7 +1011,10 @@ public class MainApplication {
 				dent = nextLine;
 
 				//Add patient using read data
-				patientList.add(new Patient(name, address, phoneNo,dent));
+				if(numbered)
+					list.add(new Patient(number, name, address, phoneNo,dent));
+				else
+					list.add(new Patient(name, address, phoneNo,dent));
 
 				//Get invoice count
 				nextLine = br.readLine();
@@ -567,10 +1024,16 @@ public class MainApplication {
 				for(int b = 0; b < invoices; b++){
 
 					//Create new invoice
-					patientList.get(a).addInvoice();
+					int invoice;
+					if(numbered){
+						nextLine = br.readLine();
+						invoice = list.get(a).addInvoice(Integer.parseInt(nextLine));
+					}
+					else
+						invoice = list.get(a).addInvoice();
 					nextLine = br.readLine();
 					invDate = Long.parseLong(nextLine);
-					patientList.get(a).setInvDate(b, invDate);
+					list.get(a).setInvDate(invoice, invDate);
 
 					//Get procedure count
 					nextLine = br.readLine();
@@ -578,13 +1041,18 @@ public class MainApplication {
 
 					//Get procedure data
 					for(int c = 0; c < procedures; c++){
+						int procNum = 0;
+						if(itemsNumbered){
+							nextLine = br.readLine();
+							procNum = Integer.parseInt(nextLine);
+						}
 						nextLine = br.readLine();
 						procName = nextLine;
 						nextLine = br.readLine();
-						procCost = Double.parseDouble(nextLine);
+						procCost = Money.parseStored(nextLine);
 
 						//Add procedure to invoice
-						patientList.get(a).addProcedure(b, procName, procCost);
+						list.get(a).addProcedure(invoice, procNum, procName, procCost);
 					}
 
 					//Get payment count
@@ -593,68 +1061,379 @@ public class MainApplication {
 
 					//Get payment data
 					for(int c = 0; c < payments; c++){
+						int payNum = 0;
+						if(itemsNumbered){
+							nextLine = br.readLine();
+							payNum = Integer.parseInt(nextLine);
+						}
 						nextLine = br.readLine();
-						payment = Double.parseDouble(nextLine);
+						payment = Money.parseStored(nextLine);
 						nextLine = br.readLine();
 						paymentDate = Long.parseLong(nextLine);
 
 						//Add payment to invoice
-						patientList.get(a).addPay(b, payment);
-						patientList.get(a).setPayDate(b, c, paymentDate);
+						if(itemsNumbered)
+							list.get(a).addPay(invoice, payNum, payment);
+						else
+							list.get(a).addPay(invoice, payment);
+						list.get(a).setPayDate(invoice, c, paymentDate);
 					}
 				}
+				list.get(a).markSaved();	//Patient matches the file
 			}
-		}catch (IOException e){
-			e.printStackTrace();
 		}
+		return list;
 	}
 
 	/**
-	 * Writes patients to file for future reading.
+	 * Saves patients in the background and notifies GUI of the result.
+	 * A save asked for while another save is running is done once that save finishes,
+	 * so repeated saves are combined into one.
 	 */
 	public static void writePats(){
-		boolean success = true;		//Flag for success of save
-		String str = "";	//Prepare String for writing
+		if(!saving.compareAndSet(false, true)){
+			saveAgain = true;
+			log("Saving patients again once the current save finishes.");
+			return;
+		}
+		log("Saving " + patCount.get() + " patients...");
+		startSave(true);
+	}
 
+	/**
+	 * Saves patients on the calling thread, such as in a batch job, then starts a new journal.
+	 * 
+	 * @return	Summary of the save
+	 * @throws IOException	If the patient file cannot be written
+	 */
+	public static String writePatsNow() throws IOException{
+		ArrayList<Patient> originals = new ArrayList<Patient>();
+		long[] mark = new long[1];
+		List<Patient> copies = copyPats(originals, mark);
+		String summary = savePats(copies, mark[0]);
+		markSaved(originals, copies);
+		return summary;
+	}
 
-		str += patientList.size() + "\n";	//Print amount of patients
+	/**
+	 * Copies all patients as they were at one point in the journal, so the journal can start over from there
+	 * once the copies are saved.
+	 * 
+	 * @param originals	List to fill with the patients copied
+	 * @param mark		Set to the point in the journal the copies match
+	 * @return			Copies in the same order as the patients
+	 */
+	private static List<Patient> copyPats(ArrayList<Patient> originals, long[] mark){
+		return PatientLocks.copy(() -> {
+			mark[0] = journal.mark();
+			originals.addAll(patientMap.values());
+			return originals;
+		});
+	}
 
-		//Add patient data to String
-		for(int a = 0; a < patientList.size(); a++)
-			str += patientList.get(a).savePatient();
+	/**
+	 * Marks patients that did not change since they were copied as matching the file the copies were saved to.
+	 * 
+	 * @param originals	Patients that were copied
+	 * @param copies	Copies that were saved
+	 */
+	private static void markSaved(List<Patient> originals, List<Patient> copies){
+		for(int a = 0; a < originals.size(); a++){
+			Patient original = originals.get(a);
+			Patient copy = copies.get(a);
+			Lock lock = PatientLocks.write(original.getPatient());
+			lock.lock();
+			try{
+				original.setSegment(copy.getSegment());
+				if(!copy.isDirty() && original.getVersion() == copy.getVersion())
+					original.markSaved();
+			}
+			finally{
+				lock.unlock();
+			}
+		}
+	}
 
-		//Try to write patient data to file
-		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(PAT_FILE), StandardCharsets.UTF_8))) {
-			writer.write(str);
+	/**
+	 * Copies patients and writes the copies to the patient file in the background, then starts a new journal.
+	 * Changes journaled while the save runs are not in the copies, so they are kept in the new journal.
+	 * Only called by the thread that set saving.
+	 * 
+	 * @param announce	Set to notify GUI when the save is done, otherwise only a failure is shown
+	 */
+	private static void startSave(boolean announce){
+		ArrayList<Patient> originals = new ArrayList<Patient>();
+		long[] mark = new long[1];
+		List<Patient> copies = copyPats(originals, mark);
+
+		IoExecutor.submit(() -> {
+			String summary = null;	//Stays null if the save fails
+			try{
+				summary = savePats(copies, mark[0]);
+			}
+			catch (IOException | RuntimeException e){
+				e.printStackTrace();
+			}
+			String saved = summary;
+			onGui(() -> saveDone(originals, copies, saved, announce));
+		});
+	}
+
+	/**
+	 * Finishes a background save on the GUI thread and starts the next save if one was asked for.
+	 * 
+	 * @param originals	Patients that were copied
+	 * @param copies	Copies that were saved
+	 * @param summary	Summary of the save, null if it failed
+	 * @param announce	Set to notify GUI of success
+	 */
+	private static void saveDone(List<Patient> originals, List<Patient> copies, String summary, boolean announce){
+		if(summary == null)
+			log("Failed to save patients.");
+		else{
+			//Patients that did not change since they were copied match the file now
+			markSaved(originals, copies);
+			if(announce)
+				log("Patients saved (" + summary + ").");
 		}
-		catch (IOException e) {
-			e.printStackTrace();
-			success = false;
+
+		saving.set(false);
+		if(saveAgain){
+			saveAgain = false;
+			writePats();
+		}
+	}
+
+	/**
+	 * Writes patients to the patient file as the next generation and starts the journal over from the save.
+	 * Saves run one at a time, so the journal always follows the generation last saved.
+	 * 
+	 * @param patients	Patients to write
+	 * @param mark		Position in the journal the patients were copied at
+	 * @return			Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	private static synchronized String savePats(Collection<Patient> patients, long mark) throws IOException{
+		String summary;
+		long next = generation + 1;
+		if(segmentStore != null){
+			summary = segmentStore.write(patients);
+			next = segmentStore.getGeneration();
 		}
+		else if(binaryStore)
+			summary = writeBinStore(patients, next);
+		else
+			summary = writePats(PAT_FILE, patients, next);
+		generation = next;
+
+		//Changes up to the copy are in the patient file now so the journal can start over from there
+		journal.reset(generation, mark);
+		return summary;
+	}
+
+	/**
+	 * Saves patients in the background once enough changes have built up in the journal.
+	 */
+	private static void compactJournal(){
+		if(journal.getEntries() >= JOURNAL_COMPACT && saving.compareAndSet(false, true))
+			startSave(false);
+	}
 
-		//Notify of success of failure to the GUI
-		if(success)
-			gui.setLog("Patients saved.");
+	/**
+	 * Hands the result of a background task to the GUI, which shows it on its own thread.
+	 * Runs the task on the calling thread when there is no sink, so background saves still finish.
+	 * 
+	 * @param task	Task to run
+	 */
+	private static void onGui(Runnable task){
+		if(sink != null)
+			sink.run(task);
 		else
-			gui.setLog("Failed to save patients.");
+			task.run();
+	}
+
+	/**
+	 * Updates log for GUI or other sink, if there is one, so checks can also run without a GUI such as in benchmarks.
+	 * 
+	 * @param str	Message to log
+	 */
+	private static void log(String str){
+		if(sink != null)
+			sink.setLog(str);
+	}
+
+	/**
+	 * Writes patients to a text file as the first generation of a new store.
+	 * 
+	 * @param file		Name of file to write to
+	 * @param patients	Patients to write
+	 * @return			Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static String writePats(String file, Collection<Patient> patients) throws IOException{
+		return writePats(file, patients, 0);
+	}
+
+	/**
+	 * Writes patients to a text file.
+	 * Patients are written to a temporary file which then replaces the old file,
+	 * so a failed save never leaves a partly written file behind.
+	 * 
+	 * @param file			Name of file to write to
+	 * @param patients		Patients to write
+	 * @param generation	Generation of the save
+	 * @return				Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static String writePats(String file, Collection<Patient> patients, long generation) throws IOException{
+		PatientWriter saved;	//Keeps the writer for its summary once closed
+		Path temp = Paths.get(file + ".tmp");
+		try (PatientWriter writer = new PatientWriter(temp.toString())) {
+			saved = writer;
+			writer.writeCount(generation, patients.size());	//Write generation and amount of patients
+
+			//Write patient data
+			for(Patient patient : patients)
+				writer.write(patient);
+		}
+		Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return saved.getSummary();
+	}
+
+	/**
+	 * Writes patients to the binary store in a new file of the next generation, such as Patients.4.dat after Patients.3.dat.
+	 * The file patients were read from stays mapped while invoices that were never opened are read from it,
+	 * and a mapped file cannot be replaced or deleted on every platform, so saves never write over it.
+	 * Older store files are deleted afterwards, and a file that is still mapped is left for a later save to delete.
+	 * 
+	 * @param patients	Patients to write
+	 * @param save		Generation of the save
+	 * @return			Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	private static String writeBinStore(Collection<Patient> patients, long save) throws IOException{
+		long file = binGeneration(binFile) + 1;
+		String next = "Patients." + file + ".dat";
+		String summary = writePatsBin(next, patients, save);
+		binFile = next;
+
+		//Delete older generations
+		File[] files = new File(".").listFiles();
+		for(int a = 0; files != null && a < files.length; a++){
+			long old = binGeneration(files[a].getName());
+			if(old >= 0 && old < file){
+				try{
+					Files.deleteIfExists(files[a].toPath());
+				}
+				catch (IOException e){
+					//Still mapped, deleted by a later save
+				}
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Finds the binary store file of the newest generation in the current directory.
+	 * 
+	 * @return	Name of the newest binary store file, or null if there is none
+	 */
+	private static String latestBinFile(){
+		String latest = null;
+		File[] files = new File(".").listFiles();
+		for(int a = 0; files != null && a < files.length; a++){
+			String name = files[a].getName();
+			if(binGeneration(name) >= 0 && (latest == null || binGeneration(name) > binGeneration(latest)))
+				latest = name;
+		}
+		return latest;
+	}
+
+	/**
+	 * Gets the generation of a binary store file from its name.
+	 * 
+	 * @param name	Name of file
+	 * @return		Generation, 0 for Patients.dat, or -1 if the file is not a binary store
+	 */
+	private static long binGeneration(String name){
+		if(name.equals(PAT_BIN_FILE))
+			return 0;
+		if(!name.startsWith("Patients.") || !name.endsWith(".dat") || name.length() <= 13)
+			return -1;
+		String generation = name.substring(9, name.length() - 4);
+		for(int a = 0; a < generation.length(); a++){
+			if(generation.charAt(a) < '0' || generation.charAt(a) > '9')
+				return -1;
+		}
+		return generation.length() > 18 ? -1 : Long.parseLong(generation);
+	}
+
+	/**
+	 * Writes patients to a binary store file as the first generation of a new store.
+	 * 
+	 * @param file		Name of file to write to
+	 * @param patients	Patients to write
+	 * @return			Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static String writePatsBin(String file, Collection<Patient> patients) throws IOException{
+		return writePatsBin(file, patients, 0);
+	}
+
+	/**
+	 * Writes patients to a binary store file.
+	 * Patients are written to a temporary file which then replaces the old file,
+	 * so a failed save never leaves a partly written file behind.
+	 * 
+	 * @param file			Name of file to write to
+	 * @param patients		Patients to write
+	 * @param generation	Generation of the save
+	 * @return				Summary of the save
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static String writePatsBin(String file, Collection<Patient> patients, long generation) throws IOException{
+		BinaryPatientWriter saved;	//Keeps the writer for its summary once closed
+		Path temp = Paths.get(file + ".tmp");
+		try (BinaryPatientWriter writer = new BinaryPatientWriter(temp.toString())) {
+			saved = writer;
+			writer.writeCount(generation, patients.size());	//Write generation and amount of patients
+
+			//Write patient data
+			for(Patient patient : patients)
+				writer.write(patient);
+		}
+		Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return saved.getSummary();
 	}
 
 	/**
 	 * Reads procedures from a file and loads into ArrayList.
+	 * Files from before procedure numbers were saved give procedures new numbers.
 	 */
 	public static void readProcs(){
 		//Set variables
 		boolean costLine = false;	//Determines if name or cost is being read
-		double procCost;
+		long procCost;
 		String pName = "";
 		String pCost = "";
 
 		//Try to read procedure data from file.
 		try (BufferedReader br = new BufferedReader(new FileReader(PROC_FILE))){
-			String nextLine;	//Take in next line from file
+			String nextLine = br.readLine();	//Take in next line from file
+
+			//Read number, name and cost of each procedure if the file has procedure numbers
+			if(PROC_VERSION.equals(nextLine)){
+				while ((nextLine = br.readLine()) != null){
+					int number = Integer.parseInt(nextLine);
+					pName = br.readLine();
+					procCost = Money.parseStored(br.readLine());
+					procedures.add(number, pName, procCost);
+				}
+				return;
+			}
 
 			//Keep reading until there's no more lines in the file
-			while ((nextLine = br.readLine()) != null){
+			for (; nextLine != null; nextLine = br.readLine()){
 
 				//Add characters to either procedure name or cost depending on which line is being read
 				for(int a = 0; a < nextLine.length(); a++){
@@ -664,12 +1443,12 @@ public class MainApplication {
 						pCost += nextLine.charAt(a);
 				}
 
-				//If done reading cost line parse String into double
+				//If done reading cost line parse String into cents
 				if(costLine){
-					procCost = Double.parseDouble(pCost);
+					procCost = Money.parseStored(pCost);
 
 					//Add procedure to ArrayList and clear variables for next patient
-					procedureList.add(new Procedure(pName, procCost));
+					procedures.add(pName, procCost);
 					pName = "";
 					pCost = "";
 				}
@@ -684,14 +1463,14 @@ public class MainApplication {
 	 * Writes procedures to a file for future reading.
 	 */
 	public static void writeProcs(){
-		String str = "";	//Prepare String for writing
+		String str = PROC_VERSION + "\n";	//Prepare String for writing
 
 		//Add procedure data to String
-		for(int a = 0; a < procedureList.size(); a++){
-			str += procedureList.get(a).getProcName() + "\n" + procedureList.get(a).getProcCost();
+		for(int a = 0; a < procedures.size(); a++){
+			str += procedures.get(a).getProc() + "\n" + procedures.get(a).getProcName() + "\n" + Money.format(procedures.get(a).getProcCost());
 
 			//Add a newline only if not last patient
-			if(a != procedureList.size()-1)
+			if(a != procedures.size()-1)
 				str += "\n";
 		}
 
@@ -742,7 +1521,7 @@ public class MainApplication {
 
 				//If all dentist data has been read, add dentist to ArrayList
 				if(separate){
-					dentistList.add(new Dentist(name, address, password));
+					addDent(new Dentist(name, address, password));
 
 					//Clear variables for next dentist
 					name = "";
@@ -760,6 +1539,16 @@ public class MainApplication {
 		}
 	}
 
+	/**
+	 * Adds dentist to ArrayList and to the index of dentists by name.
+	 * 
+	 * @param dent	Dentist to add
+	 */
+	private static void addDent(Dentist dent){
+		dentistList.add(dent);
+		dentistIndex.put(dent.getName(), dent);
+	}
+
 	/**
 	 * Writes dentists to a file for future reading.
 	 */
@@ -784,73 +1573,94 @@ public class MainApplication {
 		} 
 	}
 
+	/**
+	 * Gets names of the output formats reports can be written in.
+	 * 
+	 * @return	Names of formats
+	 */
+	public static String[] getReportFormats(){
+		String[] names = new String[ReportEngine.FORMATS.length];
+		for(int a = 0; a < names.length; a++)
+			names[a] = ReportEngine.FORMATS[a].getName();
+		return names;
+	}
+
 	/**
 	 * Writes a report on patients.
-	 * Depending on mode writes report in 2 ways:
+	 * Depending on mode writes report in 3 ways:
 	 * 0 = Report of patients sorted in ascending order by name.
 	 * 1 = Report of patients sorted by amount unpaid over 6 months in descending order.
+	 * 2 = Report of patients with unpaid invoices grouped by age of their oldest unpaid invoice.
 	 * 
-	 * @param mode	Mode of operation
-	 * @param file	File name to write to
+	 * @param mode		Mode of operation
+	 * @param format	Index of output format in getReportFormats
+	 * @param file		File name to write to
 	 */
-	public static void writeReport(int mode, String file){
+	public static void writeReport(int mode, int format, String file){
 		//If no name entered ask to enter name
 		if(file.length() == 0)
-			gui.setLog("Enter file name.");
+			log("Enter file name.");
 
-		//If name is entered
+		//If name is entered write report from a copy of the patients in the background
 		else{
-			String str = "";	//Prepare String for writing
-
-			//Sort patients according to mode
-			if(mode == 0){	//Sort by name
-				str += "Report of patients sorted by name.\n\n";
-				Collections.sort(patientList);
-
-				//Add patient data to String
-				for(int a = 0; a < patientList.size(); a++){
-					str += patientList.get(a).toString();
-
-					//Add newline only if not last patient
-					if(a != patientList.size()-1)
-						str += "\n";
+			ReportEngine report = reports.snapshot(mode);
+			ReportWriter writer = ReportEngine.FORMATS[format];
+			long total = totalOutstanding.sum();
+			report.setProgress(done -> onGui(() -> log("Writing report to " + file + ": " + done + " patients written...")));
+			log("Writing report to " + file + "...");
+
+			IoExecutor.submit(() -> {
+				//Try to write report to the file
+				try{
+					String summary = report.write(mode, writer, file, total);
+					onGui(() -> log("Report written (" + summary + ")."));
 				}
-			}
-			else{	//Sort by unpaid
-				str += "Report of patients sorted by unpaid over 6 months.\n\n";
-				Collections.sort(patientList, Patient.PatientUnpaidComparator);
-
-				long date = new Date().getTime();	//Get current time for comparing if over 6 months
-
-				//Add patient data to String
-				for(int a = 0; a < patientList.size(); a++){
-					//Add patient only if he has an unpaid invoice over 6 months
-					if(patientList.get(a).isUnpaid(date, 6))
-						str += patientList.get(a).toString();
-
-					//Add newline only if not last patient
-					if(a != patientList.size()-1)
-						str += "\n";
+				catch (IOException e) {
+					e.printStackTrace();
+					onGui(() -> log("Report could not be written to " + file + "."));
 				}
-			}
-
-			//Try to write report to the file
-			try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-				writer.write(str);
-			} 
-			catch (IOException e) {
-				e.printStackTrace();
-			}
+			});
 		}
 	}
 
 	/**
-	 * Removes patient from ArrayList.
+	 * Writes a report on patients on the calling thread, such as in a batch job.
 	 * 
-	 * @param index	Index of patient
+	 * @param mode		Mode of report, as for writeReport
+	 * @param format	Index of output format in getReportFormats
+	 * @param file		File name to write to
+	 * @return			Summary of the report
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static String writeReportNow(int mode, int format, String file) throws IOException{
+		return reports.snapshot(mode).write(mode, ReportEngine.FORMATS[format], file, totalOutstanding.sum());
+	}
+
+	/**
+	 * Removes patient from the system.
+	 * 
+	 * @param index	Number of patient
 	 */
 	public static void removePat(int index){
-		patientList.remove(index);
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patientMap.remove(index);
+			if(patient == null)
+				return;
+			patCount.decrementAndGet();
+			dentistPats(patient.getDentist()).remove(index);
+			totalOutstanding.add(-patient.getOutstanding());
+			aging.remove(index);
+			search.remove(index);
+			reports.patientsChanged();
+			journal.removePat(index);
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.PAT_REMOVED, index, -1, -1));
 	}
 
 	/**
@@ -859,7 +1669,7 @@ public class MainApplication {
 	 * @param index	Index of procedure
 	 */
 	public static void removeProc(int index){
-		procedureList.remove(index);
+		procedures.remove(index);
 		writeProcs();
 	}
 
@@ -873,77 +1683,160 @@ public class MainApplication {
 	 * @return		Validity of new details
 	 */
 	public static boolean editProc(int index, String name, String cost){
-		boolean correct = checkEditProc(name, cost);	//Check if new details are valid
+		boolean correct = checkEditProc(index, name, cost);	//Check if new details are valid
 
-		//If valid try to change procedure details
+		//If valid try to parse cost into cents
+		long price = 0;
 		if(correct){
-
-			//try to parse cost into a double and edit procedure details
 			try{
-				double price = Double.parseDouble(cost);
-				procedureList.get(index).setProcName(name);
-				procedureList.get(index).setProcCost(price);
-				writeProcs();
+				price = Money.parse(cost);
 			}
-			catch(Exception e){
-				e.printStackTrace();
+			catch(NumberFormatException e){
 				correct = false;
+				log("Enter an amount such as 12.50 for cost.");
 			}
 		}
+
+		//If parsed, change procedure details
+		if(correct){
+			procedures.edit(index, name, price);
+			writeProcs();
+		}
 		return correct;
 	}
 
 	/**
 	 * Adds invoice for a procedure to a patient.
 	 * 
-	 * @param index	Index of patient
+	 * @param index	Number of patient
 	 * @param proc	Index of procedure
 	 */
 	public static void addInv(int index, int proc){
-		int invoice = patientList.get(index).addInvoice();	//Creates a new invoice and returns its index
-		patientList.get(index).addProcedure(invoice, procedureList.get(proc).getProcName(), procedureList.get(proc).getProcCost());
+		Procedure procedure = procedures.get(proc);
+		int invoice;
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patient(index);
+			long before = patient.getOutstanding();
+			invoice = patient.addInvoice();	//Creates a new invoice and returns its number
+			patient.addProcedure(invoice, procedure.getProc(), procedure.getProcName(), procedure.getProcCost());
+			totalOutstanding.add(patient.getOutstanding() - before);
+			aging.update(index, patient.getOldestUnpaid());
+			reports.balancesChanged();
+			journal.addInv(index, invoice, patient.getInvTime(invoice));
+			journal.addInvProc(index, invoice, procedure.getProcName(), procedure.getProcCost(), procedure.getProc());
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.INV_ADDED, index, invoice, -1));
 	}
 
 	/**
 	 * Adds procedure to invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param proc		Index of procedure
 	 */
 	public static void addInvProc(int index, int invoice, int proc){
-		patientList.get(index).addProcedure(invoice, procedureList.get(proc).getProcName(), procedureList.get(proc).getProcCost());
+		Procedure procedure = procedures.get(proc);
+		int added;	//Index of the added procedure on the invoice
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patient(index);
+			long before = patient.getOutstanding();
+			patient.addProcedure(invoice, procedure.getProc(), procedure.getProcName(), procedure.getProcCost());
+			added = patient.getProcCount(invoice)-1;
+			totalOutstanding.add(patient.getOutstanding() - before);
+			aging.update(index, patient.getOldestUnpaid());
+			reports.balancesChanged();
+			journal.addInvProc(index, invoice, procedure.getProcName(), procedure.getProcCost(), procedure.getProc());
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.PROC_ADDED, index, invoice, added));
 	}
 
 	/**
 	 * Remove procedure from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param proc		Index of procedure
 	 */
 	public static void removeInvProc(int index, int invoice, int proc){
-		patientList.get(index).removeProcedure(invoice, proc);
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patient(index);
+			long before = patient.getOutstanding();
+			patient.removeProcedure(invoice, proc);
+			totalOutstanding.add(patient.getOutstanding() - before);
+			aging.update(index, patient.getOldestUnpaid());
+			reports.balancesChanged();
+			journal.removeInvProc(index, invoice, proc);
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.PROC_REMOVED, index, invoice, proc));
 	}
 
 	/**
 	 * Removes invoice from patient.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 */
 	public static void removeInv(int index, int invoice){
-		patientList.get(index).removeInvoice(invoice);
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patient(index);
+			long before = patient.getOutstanding();
+			patient.removeInvoice(invoice);
+			totalOutstanding.add(patient.getOutstanding() - before);
+			aging.update(index, patient.getOldestUnpaid());
+			reports.balancesChanged();
+			journal.removeInv(index, invoice);
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.INV_REMOVED, index, invoice, -1));
 	}
 
 	/**
 	 * Removes payment from invoice.
 	 * 
-	 * @param index		Index of patient
-	 * @param invoice	Index of invoice
+	 * @param index		Number of patient
+	 * @param invoice	Number of invoice
 	 * @param pay		Index of payment
 	 */
 	public static void removePay(int index, int invoice, int pay){
-		patientList.get(index).removePay(invoice, pay);
+		Lock lock = PatientLocks.write(index);
+		lock.lock();
+		try{
+			Patient patient = patient(index);
+			long before = patient.getOutstanding();
+			patient.removePay(invoice, pay);
+			totalOutstanding.add(patient.getOutstanding() - before);
+			aging.update(index, patient.getOldestUnpaid());
+			reports.balancesChanged();
+			journal.removePay(index, invoice, pay);
+		}
+		finally{
+			lock.unlock();
+		}
+		compactJournal();
+		fire(new StoreEvent(StoreEvent.PAY_REMOVED, index, invoice, pay));
 	}
 }
\ No newline at end of file
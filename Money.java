@@ -0,0 +1,135 @@
+/**
+ * Responsible for reading and writing amounts of money.
+ *
+ * Amounts are kept as whole cents in a long throughout the application, so adding up and comparing
+ * amounts is exact and needs no objects. Amounts are written with two decimal places, such as 12.50.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public final class Money {
+
+	/**
+	 * Constructor is private as the class only has static methods.
+	 */
+	private Money(){
+	}
+
+	/**
+	 * Parses an amount in euro such as 12, 12.5 or -12.50 into cents.
+	 * Used for amounts entered by the user, so amounts in exponent form are refused.
+	 * @param amount	Amount to parse
+	 * @return			Amount in cents
+	 * @throws NumberFormatException	If the amount is not a number, is in exponent form or has more than two decimal places
+	 */
+	public static long parse(String amount){
+		return parse(amount, false);
+	}
+
+	/**
+	 * Parses an amount read from a saved file into cents, as in parse.
+	 * Files written by older versions may hold amounts in exponent form, such as 1.0E7, or with more than
+	 * two decimal places, such as 12.345, which are rounded to the nearest cent.
+	 * Amounts entered by the user should be read with parse, which refuses such amounts.
+	 * @param amount	Amount to parse
+	 * @return			Amount in cents
+	 * @throws NumberFormatException	If the amount is not a number or is too large
+	 */
+	public static long parseStored(String amount){
+		return parse(amount, true);
+	}
+
+	/**
+	 * Parses an amount in euro into cents.
+	 * @param amount	Amount to parse
+	 * @param round		Whether to round amounts in exponent form or with more than two decimal places rather than refuse them
+	 * @return			Amount in cents
+	 */
+	private static long parse(String amount, boolean round){
+		String str = amount.trim();
+		if(str.indexOf('E') != -1 || str.indexOf('e') != -1){
+			if(!round)
+				throw new NumberFormatException("Not an amount: " + amount + ".");
+			return round(str);
+		}
+
+		//Read sign
+		int pos = 0;
+		boolean negative = false;
+		if(str.startsWith("-") || str.startsWith("+")){
+			negative = str.charAt(0) == '-';
+			pos++;
+		}
+
+		//Read whole euro and cents digit by digit
+		long cents = 0;
+		int digits = 0;
+		int decimals = -1;	//Decimal places read, -1 before the decimal point
+		for(; pos < str.length(); pos++){
+			char c = str.charAt(pos);
+			if(c == '.' && decimals == -1)
+				decimals = 0;
+			else if(c >= '0' && c <= '9'){
+				if(decimals == 2 && round)
+					return round(str);
+				if(decimals == 2)
+					throw new NumberFormatException("More than two decimal places in " + amount + ".");
+				if(++digits > 16)
+					throw new NumberFormatException("Amount " + amount + " is too large.");
+				cents = cents * 10 + (c - '0');
+				if(decimals != -1)
+					decimals++;
+			}
+			else
+				throw new NumberFormatException("Not an amount: " + amount + ".");
+		}
+		if(digits == 0)
+			throw new NumberFormatException("Not an amount: " + amount + ".");
+
+		//Scale up to cents
+		for(int a = Math.max(decimals, 0); a < 2; a++)
+			cents *= 10;
+		return negative ? -cents : cents;
+	}
+
+	/**
+	 * Rounds an amount in euro to the nearest cent.
+	 * @param amount	Amount to round, already trimmed
+	 * @return			Amount in cents
+	 * @throws NumberFormatException	If the amount is not a number or has more than 16 digits of cents
+	 */
+	private static long round(String amount){
+		//Only allow digits, a sign, a decimal point and an exponent, not forms such as NaN or 1.5f
+		for(int a = 0; a < amount.length(); a++){
+			char c = amount.charAt(a);
+			if((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E')
+				throw new NumberFormatException("Not an amount: " + amount + ".");
+		}
+		double cents = Double.parseDouble(amount) * 100;
+		if(Double.isNaN(cents) || Math.abs(cents) >= 1e16)
+			throw new NumberFormatException("Amount " + amount + " is too large.");
+		return Math.round(cents);
+	}
+
+	/**
+	 * Formats cents as an amount in euro with two decimal places.
+	 * @param cents	Amount in cents
+	 * @return		Amount such as 12.50
+	 */
+	public static String format(long cents){
+		return append(new StringBuilder(), cents).toString();
+	}
+
+	/**
+	 * Appends cents as an amount in euro with two decimal places, as in format.
+	 * @param buf	Buffer to append to
+	 * @param cents	Amount in cents
+	 * @return		The same buffer
+	 */
+	public static StringBuilder append(StringBuilder buf, long cents){
+		long abs = Math.abs(cents);
+		long part = abs % 100;
+		if(cents < 0)
+			buf.append('-');
+		return buf.append(abs / 100).append(part < 10 ? ".0" : ".").append(part);
+	}
+}
\ No newline at end of file
@@ -1,20 +1,36 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * Responsible for storing invoice data.
  * Extends Person class.
  * Implements Comparable class.
+ * Patients and their invoices are not thread-safe: threads other than the one loading them
+ * read or change a patient only while holding its lock from PatientLocks.
  * @author	Kamil Markiewicz
  * @version	2.0
  */
 public class Patient extends Person implements Comparable<Patient>{
 
+	final static long UNKNOWN = Long.MIN_VALUE;	//Time not yet worked out
+	final static long NONE = Long.MAX_VALUE;	//Time of oldest unpaid invoice when everything is paid
+	final static long MONTH = 2629743000L;	//1 month in milliseconds
+
 	private int patient;
-	private static int patNo = 0;
 	private String phoneNo;
 	private String dentist;
-	private ArrayList<Invoice> p_invoiceList;
+	private LinkedHashMap<Integer, Invoice> p_invoices;	//Invoices by invoice number in the order they were added
+	private volatile ByteBuffer pendingInvoices;	//Invoices mapped from the binary store that are not yet decoded
+	private int pendingCount;
+	private long outstanding;	//Outstanding amount of all invoices in cents, kept up to date as invoices change
+	private long oldestUnpaid;	//Time of oldest unpaid invoice, worked out again after a change
+	private boolean dirty;	//Set when changed since last saved
+	private int version;	//Incremented on every change
+	private int segment;	//Segment of the segmented store this patient is saved in, -1 if none
 
 	/**
 	 * Constructor that creates patient with given details.
@@ -24,66 +40,245 @@ public class Patient extends Person implements Comparable<Patient>{
 	 * @param dentist	Dentist of patient
 	 */
 	public Patient(String name, String address, String num, String dentist){
+		this(IdAllocator.PATIENT.next(), name, address, num, dentist);
+	}
+
+	/**
+	 * Constructor that creates patient with a known patient number, such as one read from file.
+	 * @param number	Patient number
+	 * @param name		Name of patient
+	 * @param address	Address of patient
+	 * @param num		Phone number of patient
+	 * @param dentist	Dentist of patient
+	 */
+	public Patient(int number, String name, String address, String num, String dentist){
 		super(name, address);
-		p_invoiceList = new ArrayList<Invoice>();
-		patNo++;
-		patient = patNo;
+		p_invoices = new LinkedHashMap<Integer, Invoice>();
+		IdAllocator.PATIENT.claim(number);	//Never hand out this number again
+		patient = number;
 		phoneNo = num;
 		this.dentist = dentist;
+		dirty = true;
+		version = 0;
+		segment = -1;
+		outstanding = 0;
+		oldestUnpaid = NONE;
+	}
+
+	/**
+	 * Gets the invoices, decoding invoices from the binary store on first access.
+	 * @return	Invoices by invoice number
+	 */
+	private LinkedHashMap<Integer, Invoice> invoices(){
+		if(pendingInvoices != null)
+			decode();
+		return p_invoices;
+	}
+
+	/**
+	 * Decodes invoices mapped from the binary store.
+	 * Several threads may read a patient at once, so one thread decodes the invoices into a scratch patient
+	 * and only then hands them over, leaving readers of the outstanding amount or the invoices a consistent view.
+	 */
+	private synchronized void decode(){
+		ByteBuffer buf = pendingInvoices;
+		if(buf == null)
+			return;		//Decoded by another thread meanwhile
+		Patient decoded = new Patient(patient, getName(), getAddress(), phoneNo, dentist);
+		BinaryPatientReader.readInvoices(buf, pendingCount, decoded);
+
+		//Decoding is not a change
+		if(!dirty)
+			decoded.markSaved();
+		p_invoices = decoded.p_invoices;
+		outstanding = decoded.outstanding;
+		pendingInvoices = null;		//Hands the invoices over to threads that see the invoices are decoded
+	}
+
+	/**
+	 * Gets an invoice by its number.
+	 * @param invoice	Number of invoice
+	 * @return			Invoice with the number
+	 */
+	private Invoice invoice(int invoice){
+		Invoice inv = invoices().get(invoice);
+		if(inv == null)
+			throw new IllegalArgumentException("Patient " + patient + " has no invoice number " + invoice + ".");
+		return inv;
+	}
+
+	/**
+	 * Sets invoices to be decoded from the binary store when first needed.
+	 * @param buf		Encoded invoices
+	 * @param count	Amount of invoices
+	 * @param amount	Outstanding amount of the invoices in cents
+	 * @param oldest	Time of oldest unpaid invoice
+	 */
+	void setPendingInvoices(ByteBuffer buf, int count, long amount, long oldest){
+		pendingInvoices = buf;
+		pendingCount = count;
+		outstanding = amount;
+		oldestUnpaid = oldest;
+	}
+
+	/**
+	 * Gets invoices that have not been decoded yet.
+	 * @return	Encoded invoices, or null if they have been decoded
+	 */
+	ByteBuffer getPendingInvoices(){
+		ByteBuffer pending = pendingInvoices;
+		if(pending == null)
+			return null;
+		return pending.duplicate();
+	}
+
+	/**
+	 * Copies the patient for saving or reporting on another thread while this patient keeps changing.
+	 * Invoices are copied, and invoices not yet decoded share the mapped store without decoding it.
+	 * @return	Copy with the same number, details, invoices, version and segment
+	 */
+	Patient snapshot(){
+		Patient copy = new Patient(patient, getName(), getAddress(), phoneNo, dentist);
+		ByteBuffer pending = pendingInvoices;	//Read first, as invoices are only decoded once they are handed over
+		if(pending != null)
+			copy.pendingInvoices = pending.duplicate();
+		else{
+			for(Invoice inv : p_invoices.values())
+				copy.p_invoices.put(inv.getInvoiceNo(), inv.snapshot());
+		}
+		copy.pendingCount = pendingCount;
+		copy.outstanding = outstanding;
+		copy.oldestUnpaid = oldestUnpaid;
+		copy.dirty = dirty;
+		copy.version = version;
+		copy.segment = segment;
+		return copy;
 	}
 
 	/**
 	 * Adds invoice to patient
-	 * @return	Index of added invoice
+	 * @return	Number of added invoice
 	 */
 	public int addInvoice(){
-		p_invoiceList.add(new Invoice());
-		return p_invoiceList.size()-1;
+		return addInvoice(new Invoice());
+	}
+
+	/**
+	 * Adds invoice with a known invoice number to patient, such as one read from file.
+	 * @param number	Number of invoice
+	 * @return			Number of added invoice
+	 */
+	public int addInvoice(int number){
+		return addInvoice(new Invoice(number));
+	}
+
+	/**
+	 * Adds invoice to patient
+	 * @param inv	Invoice to add
+	 * @return		Number of added invoice
+	 */
+	private int addInvoice(Invoice inv){
+		touch();
+		invoices().put(inv.getInvoiceNo(), inv);
+		return inv.getInvoiceNo();
 	}
 
 	/**
 	 * Removes invoice from patient
-	 * @param index	Index of invoice
+	 * @param invoice	Number of invoice
 	 */
-	public void removeInvoice(int index){
-		p_invoiceList.remove(index);
+	public void removeInvoice(int invoice){
+		touch();
+		Invoice inv = invoices().remove(invoice);
+		if(inv != null)
+			outstanding -= inv.getOutstanding();
+	}
+
+	/**
+	 * Checks if patient has an invoice.
+	 * @param invoice	Number of invoice
+	 * @return			True if the patient has the invoice
+	 */
+	public boolean hasInvoice(int invoice){
+		return invoices().containsKey(invoice);
+	}
+
+	/**
+	 * Adds procedure not known in the catalogue to an invoice, such as one read from a file that did not store procedure numbers.
+	 * @param invoice	Number of invoice
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
+	 */
+	public void addProcedure(int invoice, String name, long cost){
+		addProcedure(invoice, 0, name, cost);
 	}
 
 	/**
 	 * Adds procedure to an invoice.
-	 * @param index	Index of invoice
-	 * @param name	Name of procedure
-	 * @param cost	Cost of procedure
+	 * @param invoice	Number of invoice
+	 * @param number	Number of the catalogue procedure billed, 0 if not known
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
 	 */
-	public void addProcedure(int index, String name, double cost){
-		p_invoiceList.get(index).addProcedure(name, cost);
+	public void addProcedure(int invoice, int number, String name, long cost){
+		touch();
+		Invoice inv = invoice(invoice);
+		long before = inv.getOutstanding();
+		inv.addProcedure(number, name, cost);
+		outstanding += inv.getOutstanding() - before;
 	}
 
 	/**
 	 * Removes procedure from invoice.
-	 * @param invoice	Index of invoice
+	 * @param invoice	Number of invoice
 	 * @param index		Index of procedure
 	 */
 	public void removeProcedure(int invoice, int index){
-		p_invoiceList.get(invoice).removeProcedure(index);
+		touch();
+		Invoice inv = invoice(invoice);
+		long before = inv.getOutstanding();
+		inv.removeProcedure(index);
+		outstanding += inv.getOutstanding() - before;
 	}
 
 	/**
 	 * Removes payment from invoice.
-	 * @param invoice	Index of invoice
+	 * @param invoice	Number of invoice
 	 * @param index		Index of payment
 	 */
 	public void removePay(int invoice, int index){
-		p_invoiceList.get(invoice).removePay(index);
+		touch();
+		Invoice inv = invoice(invoice);
+		long before = inv.getOutstanding();
+		inv.removePay(index);
+		outstanding += inv.getOutstanding() - before;
 	}
 
 	/**
-	 * Adds payment to invoice.
-	 * @param index		Index of invoice
-	 * @param amount	Amount of payment
+	 * Adds a new payment to invoice.
+	 * @param invoice	Number of invoice
+	 * @param amount	Amount of payment in cents
 	 */
-	public void addPay(int index, double amount){
-		p_invoiceList.get(index).addPay(amount);
+	public void addPay(int invoice, long amount){
+		touch();
+		Invoice inv = invoice(invoice);
+		long before = inv.getOutstanding();
+		inv.addPay(amount);
+		outstanding += inv.getOutstanding() - before;
+	}
+
+	/**
+	 * Adds a payment with a known payment number to invoice, such as one read from file.
+	 * @param invoice	Number of invoice
+	 * @param number	Number of payment
+	 * @param amount	Amount of payment in cents
+	 */
+	public void addPay(int invoice, int number, long amount){
+		touch();
+		Invoice inv = invoice(invoice);
+		long before = inv.getOutstanding();
+		inv.addPay(number, amount);
+		outstanding += inv.getOutstanding() - before;
 	}
 
 	/**
@@ -100,30 +295,32 @@ public class Patient extends Person implements Comparable<Patient>{
 	 */
 	public String getInvoices(){
 		String str = "";
-		for(int a = 0; a < p_invoiceList.size(); a++){
-			str += a + ") Invoice Number: " + p_invoiceList.get(a).getInvoiceNo()
-					+ " Amount: \u20ac" + p_invoiceList.get(a).getInvoiceAmt()
-					+ " Outstanding: \u20ac" + p_invoiceList.get(a).getOutstanding() + "\n";
+		int a = 0;
+		for(Invoice inv : invoices().values()){
+			str += a + ") Invoice Number: " + inv.getInvoiceNo()
+					+ " Amount: \u20ac" + Money.format(inv.getInvoiceAmt())
+					+ " Outstanding: \u20ac" + Money.format(inv.getOutstanding()) + "\n";
+			a++;
 		}
 		return str;
 	}
 
 	/**
 	 * Gets procedure count from invoice.
-	 * @param index	Index of invoice
-	 * @return		Procedure count
+	 * @param invoice	Number of invoice
+	 * @return			Procedure count
 	 */
-	public int getProcCount(int index){
-		return p_invoiceList.get(index).getProcCount();
+	public int getProcCount(int invoice){
+		return invoice(invoice).getProcCount();
 	}
 
 	/**
 	 * Gets payment count from invoice.
-	 * @param index	Index of invoice
-	 * @return		Payment count
+	 * @param invoice	Number of invoice
+	 * @return			Payment count
 	 */
-	public int getPayCount(int index){
-		return p_invoiceList.get(index).getPayCount();
+	public int getPayCount(int invoice){
+		return invoice(invoice).getPayCount();
 	}
 
 	/**
@@ -139,65 +336,109 @@ public class Patient extends Person implements Comparable<Patient>{
 	 * @return	Count of invoices
 	 */
 	public int getInvCount(){
-		return p_invoiceList.size();
+		if(pendingInvoices != null)
+			return pendingCount;
+		return p_invoices.size();
 	}
 
 	/**
-	 * Gets invoice number.
-	 * @param index	Index of invoice
-	 * @return		Number of invoice
+	 * Gets numbers of all invoices in the order they were added.
+	 * @return	Invoice numbers
 	 */
-	public int getInvNum(int index){
-		return p_invoiceList.get(index).getInvoiceNo();
+	public int[] getInvNums(){
+		int[] nums = new int[invoices().size()];
+		Iterator<Integer> it = invoices().keySet().iterator();
+		for(int a = 0; a < nums.length; a++)
+			nums[a] = it.next();
+		return nums;
+	}
+
+	/**
+	 * Gets time of invoice.
+	 * @param invoice	Number of invoice
+	 * @return			Time of invoice in milliseconds
+	 */
+	public long getInvTime(int invoice){
+		return invoice(invoice).getInvoiceTime();
 	}
 
 	/**
 	 * Gets outstanding amount of invoice.
-	 * @param index	Index of invoice
-	 * @return		Outstanding amount of invoice
+	 * @param invoice	Number of invoice
+	 * @return			Outstanding amount of invoice in cents
 	 */
-	public double getInvOut(int index){
-		return p_invoiceList.get(index).getOutstanding();
+	public long getInvOut(int invoice){
+		return invoice(invoice).getOutstanding();
 	}
 
 	/**
 	 * Gets procedure cost from invoice.
-	 * @param index	Index of invoice
-	 * @param proc	Index of procedure
-	 * @return		Cost of procedure
+	 * @param invoice	Number of invoice
+	 * @param proc		Index of procedure
+	 * @return			Cost of procedure in cents
+	 */
+	public long getProcCost(int invoice, int proc){
+		return invoice(invoice).getProcCost(proc);
+	}
+
+	/**
+	 * Gets number of the catalogue procedure a procedure on an invoice was billed from.
+	 * @param invoice	Number of invoice
+	 * @param proc		Index of procedure
+	 * @return			Number of procedure, 0 if not known
+	 */
+	public int getProcNum(int invoice, int proc){
+		return invoice(invoice).getProcNum(proc);
+	}
+
+	/**
+	 * Gets payment number from invoice.
+	 * @param invoice	Number of invoice
+	 * @param pay		Index of payment
+	 * @return			Number of payment
 	 */
-	public double getProcCost(int index, int proc){
-		return p_invoiceList.get(index).getProcCost(proc);
+	public int getPayNum(int invoice, int pay){
+		return invoice(invoice).getPayNum(pay);
 	}
 
 	/**
 	 * Gets procedure name from invoice.
-	 * @param index	Index of invoice
-	 * @param proc	Index of procedure
-	 * @return		Name of procedure
+	 * @param invoice	Number of invoice
+	 * @param proc		Index of procedure
+	 * @return			Name of procedure
 	 */
-	public String getProcName(int index, int proc){
-		return p_invoiceList.get(index).getProcName(proc);
+	public String getProcName(int invoice, int proc){
+		return invoice(invoice).getProcName(proc);
 	}
 
 	/**
 	 * Gets payment date from invoice as string.
-	 * @param index	Index of invoice
-	 * @param pay	Index of payment
-	 * @return		Date of payment
+	 * @param invoice	Number of invoice
+	 * @param pay		Index of payment
+	 * @return			Date of payment
+	 */
+	public String getPayDate(int invoice, int pay){
+		return invoice(invoice).getPayDate(pay);
+	}
+
+	/**
+	 * Gets payment time from invoice.
+	 * @param invoice	Number of invoice
+	 * @param pay		Index of payment
+	 * @return			Time of payment in milliseconds
 	 */
-	public String getPayDate(int index, int pay){
-		return p_invoiceList.get(index).getPayDate(pay);
+	public long getPayTime(int invoice, int pay){
+		return invoice(invoice).getPayTime(pay);
 	}
 
 	/**
 	 * Gets payment amount from invoice.
-	 * @param index	Index of invoice
-	 * @param pay	Index of payment
-	 * @return		Amount of payment
+	 * @param invoice	Number of invoice
+	 * @param pay		Index of payment
+	 * @return			Amount of payment in cents
 	 */
-	public double getPayAmt(int index, int pay){
-		return p_invoiceList.get(index).getPayAmt(pay);
+	public long getPayAmt(int invoice, int pay){
+		return invoice(invoice).getPayAmt(pay);
 	}
 
 	/**
@@ -209,50 +450,61 @@ public class Patient extends Person implements Comparable<Patient>{
 	}
 
 	/**
-	 * Creates a string of patient details for file saving.
-	 * @return	Patient details
+	 * Writes patient details for file saving.
+	 * @param writer	Writer to write patient details to
+	 * @return	Amount of records written
+	 * @throws IOException	If writing fails
 	 */
-	public String savePatient(){
-		String str = "";	//Prepare string
-
-		//Add patient details to string
-		str += getName() + "\n" + getAddress() + "\n" + getNum() + "\n" + dentist + "\n" + p_invoiceList.size() + "\n";
-
-		//Add invoice details
-		if(p_invoiceList.size() > 0){
-			for(int a = 0; a < p_invoiceList.size(); a++)
-				str += p_invoiceList.get(a).saveInvoice();
-		}
-		return str;
+	public int savePatient(Writer writer) throws IOException {
+		int records = 1;	//Count the patient itself
+
+		//Write patient details
+		writer.write(Integer.toString(patient));
+		writer.write('\n');
+		writer.write(getName());
+		writer.write('\n');
+		writer.write(getAddress());
+		writer.write('\n');
+		writer.write(getNum());
+		writer.write('\n');
+		writer.write(dentist);
+		writer.write('\n');
+		writer.write(Integer.toString(invoices().size()));
+		writer.write('\n');
+
+		//Write invoice details
+		for(Invoice inv : invoices().values())
+			records += inv.saveInvoice(writer);
+		return records;
 	}
 
 	/**
 	 * Sets date of invoice.
-	 * @param index	Index of invoice
-	 * @param date	Date of invoice
+	 * @param invoice	Number of invoice
+	 * @param date		Date of invoice
 	 */
-	public void setInvDate(int index, long date){
-		p_invoiceList.get(index).setDate(date);
+	public void setInvDate(int invoice, long date){
+		touch();
+		invoice(invoice).setDate(date);
 	}
 
 	/**
 	 * Sets date of payment on invoice.
-	 * @param index		Index of invoice
+	 * @param invoice	Number of invoice
 	 * @param payment	Index of payment
 	 * @param date		Date of payment
 	 */
-	public void setPayDate(int index, int payment, long date){
-		p_invoiceList.get(index).setPayDate(payment, date);
+	public void setPayDate(int invoice, int payment, long date){
+		touch();
+		invoice(invoice).setPayDate(payment, date);
 	}
 
 	/**
-	 * Gets outstanding amount of invoice.
-	 * @return	Outstanding amount of invoice
+	 * Gets outstanding amount of all invoices of the patient.
+	 * The amount is kept up to date as invoices change so this does not go through the invoices.
+	 * @return	Outstanding amount of patient in cents
 	 */
-	public double getOutstanding(){
-		double outstanding = 0;
-		for(int a = 0; a < p_invoiceList.size(); a++)
-			outstanding += p_invoiceList.get(a).getOutstanding();
+	public long getOutstanding(){
 		return outstanding;
 	}
 
@@ -263,33 +515,98 @@ public class Patient extends Person implements Comparable<Patient>{
 	 * @return			True if unpaid
 	 */
 	public boolean isUnpaid(long date, int months){
-		boolean unpaid = false;
-		long period = 2629743000L;	//1 month is milliseconds
-		period = period*months;	//Full period in milliseconds
-
-		//Search through all invoices until an unpaid invoice is found
-		for(int a = 0; a < p_invoiceList.size(); a++){
-			if(!unpaid){
-				if(p_invoiceList.get(a).getInvoiceTime() < (date - period)){
-					if(p_invoiceList.get(a).getOutstanding() > 0)
-						unpaid = true;
-				}
+		long period = MONTH*months;	//Full period in milliseconds
+
+		//Unpaid over the period if the oldest unpaid invoice is older than it
+		return getOldestUnpaid() < (date - period);
+	}
+
+	/**
+	 * Gets time of the oldest invoice with an outstanding amount.
+	 * @return	Time of oldest unpaid invoice in milliseconds, NONE if everything is paid
+	 */
+	public long getOldestUnpaid(){
+		if(oldestUnpaid == UNKNOWN){
+			long oldest = NONE;
+			for(Invoice inv : invoices().values()){
+				if(inv.getOutstanding() > 0)
+					oldest = Math.min(oldest, inv.getInvoiceTime());
 			}
+			oldestUnpaid = oldest;
+		}
+		return oldestUnpaid;
+	}
+
+	/**
+	 * Marks patient as changed since last saved.
+	 */
+	private void touch(){
+		dirty = true;
+		version++;
+		oldestUnpaid = UNKNOWN;	//Worked out again when next needed
+	}
+
+	/**
+	 * Checks if patient or any of its invoices has changed since last saved.
+	 * @return	True if changed
+	 */
+	public boolean isDirty(){
+		return dirty;
+	}
+
+	/**
+	 * Gets version of patient, which goes up with every change.
+	 * @return	Version of patient
+	 */
+	public int getVersion(){
+		return version;
+	}
+
+	/**
+	 * Marks patient and its invoices as saved.
+	 */
+	public void markSaved(){
+		dirty = false;
+		for(Invoice inv : p_invoices.values())
+			inv.markSaved();
+	}
+
+	/**
+	 * Gets segment of the segmented store this patient is saved in.
+	 * @return	Segment number, -1 if not saved in a segment yet
+	 */
+	int getSegment(){
+		return segment;
+	}
+
+	/**
+	 * Sets segment of the segmented store this patient is saved in.
+	 * @param segment	Segment number
+	 */
+	void setSegment(int segment){
+		this.segment = segment;
+	}
+
+	/**
+	 * Appends patient details and invoices for reports, as in toString.
+	 * @param buf	Buffer to append to
+	 * @return		The same buffer
+	 */
+	public StringBuilder appendTo(StringBuilder buf){
+		buf.append("Patient: \t").append(super.getName()).append(", address: \t").append(super.getAddress());
+		buf.append(", phone number: \t").append(phoneNo).append(", dentist: \t").append(dentist).append('.');
+		if(invoices().size() > 0){
+			buf.append(", invoices: \n");
+			for(Invoice inv : invoices().values())
+				inv.appendTo(buf);
 		}
-		return unpaid;
+		buf.append("\n***");
+		return buf;
 	}
 
 	@Override
 	public String toString(){
-		String str = "";
-		str += "Patient: \t" + super.getName() + ", address: \t" + super.getAddress() + ", phone number: \t" + phoneNo + ", dentist: \t" + dentist + ".";
-		if(p_invoiceList.size() > 0){
-			str += ", invoices: \n";
-			for(int a = 0; a < p_invoiceList.size(); a++)
-				str += p_invoiceList.get(a).toString();
-		}
-		str+="\n***";
-		return str;
+		return appendTo(new StringBuilder()).toString();
 	}
 
 	/**
@@ -311,13 +628,11 @@ public class Patient extends Person implements Comparable<Patient>{
 	public static Comparator<Patient> PatientUnpaidComparator = new Comparator<Patient>() {
 		public int compare(Patient patient1, Patient patient2) {
 
-			double unpaid1 = patient1.getOutstanding();
-			double unpaid2 = patient2.getOutstanding();
+			long unpaid1 = patient1.getOutstanding();
+			long unpaid2 = patient2.getOutstanding();
 
 			//Return the value for descending order
-			double num = (unpaid2 - unpaid1);
-			Math.ceil(num);
-			return (int)num;
+			return Long.compare(unpaid2, unpaid1);
 		}
 	};
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Converts a patient store between the text, binary and segmented formats.
+ * The format of the input file is detected from its header and a text file is written as binary
+ * and a binary file as text. If the output is a directory, a segmented store is written into it instead.
+ * 
+ * Usage: java PatientConverter [input] [output]
+ * Converts Patients.txt to Patients.dat when no files are given.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class PatientConverter {
+
+	final private static int SEGMENT_SIZE = Integer.getInteger("dentistry.segment.size", 256);	//Patients per segment
+
+	/**
+	 * Converts the input store into the other format.
+	 * 
+	 * @param args	Input and output file names
+	 */
+	public static void main(String[] args){
+		String from = "Patients.txt";
+		String to = "Patients.dat";
+		if(args.length > 0)
+			from = args[0];
+		if(args.length > 1)
+			to = args[1];
+
+		//Try to convert the store
+		try{
+			String summary;
+			ArrayList<Patient> patients;
+			long generation;	//Kept so a journal of the store still matches the converted store
+			boolean binary = false;
+			long start = System.nanoTime();
+
+			//Read the store in its format
+			if(new File(from).isDirectory()){
+				SegmentedPatientStore store = new SegmentedPatientStore(from, SEGMENT_SIZE);
+				patients = store.read();
+				generation = store.getGeneration();
+			}
+			else if(BinaryPatientReader.isBinary(from)){
+				patients = BinaryPatientReader.read(from);
+				generation = BinaryPatientReader.readGeneration(from);
+				binary = true;
+			}
+			else{
+				patients = MainApplication.readPats(from);
+				generation = MainApplication.readGeneration(from);
+			}
+			System.out.println("Read " + patients.size() + " patients from " + from + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+
+			//Write the store in the other format
+			if(new File(to).isDirectory() || to.endsWith(File.separator))
+				summary = new SegmentedPatientStore(to, SEGMENT_SIZE).write(patients);
+			else if(binary)
+				summary = MainApplication.writePats(to, patients, generation);
+			else
+				summary = MainApplication.writePatsBin(to, patients, generation);
+			System.out.println("Wrote " + to + " (" + summary + ").");
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Responsible for locking patients so threads such as the GUI, background saves, reports and the API
+ * can use the patients at the same time.
+ *
+ * Patients are spread over a fixed set of read-write locks by patient number. A change to a patient holds
+ * the write lock of its patient, so changes to patients under different locks never wait for each other,
+ * and reads only wait for a change to a patient under the same lock. Patients, invoices and payments
+ * are not thread-safe themselves, so every read or change of a patient that other threads may use goes through these locks.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public final class PatientLocks {
+
+	final static int STRIPES = stripes(Integer.getInteger("dentistry.lock.stripes", 1024));	//Locks patients are spread over
+
+	final private static ReentrantReadWriteLock[] locks = create();
+
+	/**
+	 * Constructor is private as the class only has static methods.
+	 */
+	private PatientLocks(){
+	}
+
+	/**
+	 * Gets the lock for reading a patient.
+	 * @param patient	Number of patient
+	 * @return			Read lock shared with other readers
+	 */
+	public static Lock read(int patient){
+		return lock(patient).readLock();
+	}
+
+	/**
+	 * Gets the lock for changing a patient.
+	 * @param patient	Number of patient
+	 * @return			Write lock
+	 */
+	public static Lock write(int patient){
+		return lock(patient).writeLock();
+	}
+
+	/**
+	 * Copies patients as they all were at one moment, such as for a save that has to match a point in the journal.
+	 * Every read lock is held while the moment is taken, so no patient changes meanwhile. Each lock is then let go
+	 * as soon as the patients under it are copied, so a change only waits until its own patient is copied.
+	 * Reads never wait.
+	 * @param moment	Called while no patient can change, gets the patients to copy
+	 * @return			Copies in the same order as the patients
+	 */
+	public static List<Patient> copy(Supplier<List<Patient>> moment){
+		for(int a = 0; a < STRIPES; a++)
+			locks[a].readLock().lock();
+		int stripe = 0;	//Locks before this one are let go
+		try{
+			List<Patient> pats = moment.get();
+
+			//Chain the positions of the patients under each lock
+			int[] first = new int[STRIPES];
+			int[] next = new int[pats.size()];
+			Arrays.fill(first, -1);
+			for(int a = pats.size() - 1; a >= 0; a--){
+				int lock = pats.get(a).getPatient() & (STRIPES - 1);
+				next[a] = first[lock];
+				first[lock] = a;
+			}
+
+			//Copy patients lock by lock
+			Patient[] copies = new Patient[pats.size()];
+			for(; stripe < STRIPES; stripe++){
+				for(int a = first[stripe]; a >= 0; a = next[a])
+					copies[a] = pats.get(a).snapshot();
+				locks[stripe].readLock().unlock();
+			}
+			return Arrays.asList(copies);
+		}
+		finally{
+			for(; stripe < STRIPES; stripe++)
+				locks[stripe].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the read-write lock a patient number is spread to.
+	 * Numbers are handed out in order, so consecutive patients get consecutive locks.
+	 * @param patient	Number of patient
+	 * @return			Lock of the patient
+	 */
+	private static ReentrantReadWriteLock lock(int patient){
+		return locks[patient & (STRIPES - 1)];
+	}
+
+	/**
+	 * Creates the locks.
+	 * @return	Locks
+	 */
+	private static ReentrantReadWriteLock[] create(){
+		ReentrantReadWriteLock[] created = new ReentrantReadWriteLock[STRIPES];
+		for(int a = 0; a < created.length; a++)
+			created[a] = new ReentrantReadWriteLock();
+		return created;
+	}
+
+	/**
+	 * Rounds the amount of locks up to a power of two, so a patient's lock is found with a mask.
+	 * @param stripes	Amount of locks asked for
+	 * @return			Amount of locks to create
+	 */
+	private static int stripes(int stripes){
+		int count = 1;
+		while(count < stripes && count < 1 << 20)
+			count <<= 1;
+		return count;
+	}
+}
\ No newline at end of file
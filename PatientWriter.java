@@ -0,0 +1,164 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Responsible for streaming patient data to a file.
+ * Patients, invoices, procedures and payments are written straight to the file as they are visited,
+ * so saving needs no more memory than the write buffer.
+ * Keeps track of bytes and records written and time taken.
+ *
+ * The file starts with the format version followed by the generation of the save and the patient count.
+ * The generation goes up with every save and ties the journal to the save it follows.
+ * Patients, invoices and payments are written with their numbers so they keep them when read back,
+ * and procedures with the number of the catalogue procedure they were billed from.
+ * Files without a version line are from before numbers were saved and get new numbers when read.
+ * Version v2 files did not save procedure and payment numbers, so their payments get new numbers when read.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class PatientWriter implements Closeable {
+
+	final static String VERSION = "v3";
+	final static String VERSION_2 = "v2";	//Patient and invoice numbers only
+
+	private ByteCounter counter;
+	private Writer writer;
+	private long records;
+	private long start;
+	private long elapsed;
+	private boolean closed;
+
+	/**
+	 * Constructor that opens the given file for writing.
+	 * @param file	Name of file to write to
+	 * @throws IOException	If the file cannot be opened
+	 */
+	public PatientWriter(String file) throws IOException {
+		this(new FileOutputStream(file));
+	}
+
+	/**
+	 * Constructor that writes to the given stream.
+	 * @param out	Stream to write to
+	 */
+	public PatientWriter(OutputStream out){
+		start = System.nanoTime();
+		counter = new ByteCounter(out);
+		writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8));
+		records = 0;
+		closed = false;
+	}
+
+	/**
+	 * Writes the format version, the generation of the save and the amount of patients that will follow.
+	 * @param generation	Generation of the save
+	 * @param patients		Amount of patients
+	 * @throws IOException	If writing fails
+	 */
+	public void writeCount(long generation, int patients) throws IOException {
+		writer.write(VERSION);
+		writer.write('\n');
+		writer.write(Long.toString(generation));
+		writer.write('\n');
+		writer.write(Integer.toString(patients));
+		writer.write('\n');
+	}
+
+	/**
+	 * Writes a patient along with all of its invoices.
+	 * @param patient	Patient to write
+	 * @throws IOException	If writing fails
+	 */
+	public void write(Patient patient) throws IOException {
+		records += patient.savePatient(writer);
+	}
+
+	/**
+	 * Flushes and closes the file and stops the timer.
+	 * Does nothing if already closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!closed){
+			closed = true;
+			try{
+				writer.close();
+			}
+			finally{
+				elapsed = System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Gets amount of bytes written to the file.
+	 * Only includes flushed data until closed.
+	 * @return	Bytes written
+	 */
+	public long getBytes(){
+		return counter.getCount();
+	}
+
+	/**
+	 * Gets amount of records written.
+	 * Patients, invoices, procedures and payments each count as one record.
+	 * @return	Records written
+	 */
+	public long getRecords(){
+		return records;
+	}
+
+	/**
+	 * Gets time taken from opening to closing the file in milliseconds.
+	 * @return	Elapsed time in milliseconds
+	 */
+	public long getElapsed(){
+		if(closed)
+			return elapsed / 1000000;
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Creates a summary of the save for the system log.
+	 * @return	Summary of records, bytes and time
+	 */
+	public String getSummary(){
+		return getRecords() + " records, " + getBytes() + " bytes in " + getElapsed() + " ms";
+	}
+
+	/**
+	 * Output stream that counts the bytes passing through it.
+	 * Shared with the binary patient writer.
+	 */
+	static class ByteCounter extends FilterOutputStream {
+
+		private long count = 0;
+
+		public ByteCounter(OutputStream out){
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		public long getCount(){
+			return count;
+		}
+	}
+}
\ No newline at end of file
@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Date;
 
 /**
@@ -8,43 +10,76 @@ import java.util.Date;
 public class Payment {
 
 	private int payment;
-	static int paymentNo = 0;
-	private double paymentAmt;
+	private long paymentAmt;	//Amount in cents
 	private Date paymentDate;
 
 	/**
 	 * Constructor which creates a payment at this time with the given amount.
-	 * @param amount	Amount in the payment
+	 * @param amount	Amount in the payment in cents
 	 */
-	public Payment(double amount){
+	public Payment(long amount){
 		paymentDate = new Date();
 		paymentAmt = amount;
-		paymentNo++;
-		payment = paymentNo;
+		payment = IdAllocator.PAYMENT.next();
 	}
 
-	/**Creates a string with payment data for file storage.
-	 * @return	String of payment data
+	/**
+	 * Constructor which creates a payment at this time with a known payment number, such as one read from file.
+	 * @param number	Number of payment, 0 if not known
+	 * @param amount	Amount in the payment in cents
+	 */
+	public Payment(int number, long amount){
+		paymentDate = new Date();
+		paymentAmt = amount;
+		payment = number;
+		IdAllocator.PAYMENT.claim(number);	//Never hand out this number again
+	}
+
+	/**
+	 * Constructor which copies a payment, keeping its number without claiming it again.
+	 * @param original	Payment to copy
 	 */
-	public String savePayment(){
-		String str = "";
-		str += paymentAmt + "\n" + paymentDate.getTime();
-		return str;
+	private Payment(Payment original){
+		paymentDate = new Date(original.paymentDate.getTime());
+		paymentAmt = original.paymentAmt;
+		payment = original.payment;
+	}
+
+	/**
+	 * Copies the payment for saving or reporting on another thread.
+	 * @return	Copy with the same number, amount and date
+	 */
+	Payment snapshot(){
+		return new Payment(this);
+	}
+
+	/**
+	 * Writes payment data for file storage.
+	 * @param writer	Writer to write payment data to
+	 * @throws IOException	If writing fails
+	 */
+	public void savePayment(Writer writer) throws IOException {
+		writer.write(Integer.toString(payment));
+		writer.write('\n');
+		writer.write(Money.format(paymentAmt));
+		writer.write('\n');
+		writer.write(Long.toString(paymentDate.getTime()));
+		writer.write('\n');
 	}
 
 	/**
 	 * Gets payment amount.
-	 * @return	Amount of payment
+	 * @return	Amount of payment in cents
 	 */
-	public double getPaymentAmt() {
+	public long getPaymentAmt() {
 		return paymentAmt;
 	}
 
 	/**
 	 * Sets payment amount.
-	 * @param paymentAmt
+	 * @param paymentAmt	Amount of payment in cents
 	 */
-	public void setPaymentAmt(double paymentAmt) {
+	public void setPaymentAmt(long paymentAmt) {
 		this.paymentAmt = paymentAmt;
 	}
 
@@ -73,8 +108,18 @@ public class Payment {
 		paymentDate.setTime(date);
 	}
 
+	/**
+	 * Appends date and amount of payment for reports, as in toString.
+	 * @param buf	Buffer to append to
+	 * @return		The same buffer
+	 */
+	public StringBuilder appendTo(StringBuilder buf){
+		buf.append(paymentDate).append(" \t\u20ac");
+		return Money.append(buf, paymentAmt);
+	}
+
 	@Override
 	public String toString(){
-		return paymentDate + " \t\u20ac" + paymentAmt;
+		return appendTo(new StringBuilder()).toString();
 	}
 }
\ No newline at end of file
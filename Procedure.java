@@ -1,25 +1,36 @@
 /**
  * Responsible for storing procedure data.
+ * Procedures in the catalogue have their own numbers. Procedures on an invoice keep the number
+ * of the catalogue procedure they were billed from, or 0 if it is not known.
  * @author Kamil Markiewicz
  * @version 2.0
  */
 public class Procedure {
 
 	private int proc;
-	private static int procNo = 0;
 	private String procName;
-	private double procCost;
+	private long procCost;	//Cost in cents
 
 	/**
-	 * Constructor that creates a procedure with given details.
+	 * Constructor that creates a new catalogue procedure with given details.
 	 * @param name	Name of procedure
-	 * @param cost	Cost of procedure
+	 * @param cost	Cost of procedure in cents
 	 */
-	public Procedure(String name, double cost){
+	public Procedure(String name, long cost){
+		this(IdAllocator.PROCEDURE.next(), name, cost);
+	}
+
+	/**
+	 * Constructor that creates a procedure with a known procedure number, such as one read from file.
+	 * @param number	Number of procedure, 0 if not known
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
+	 */
+	public Procedure(int number, String name, long cost){
 		procName = name;
 		procCost = cost;
-		procNo++;
-		proc = procNo;
+		IdAllocator.PROCEDURE.claim(number);	//Never hand out this number again
+		proc = number;
 	}
 
 	/**
@@ -40,17 +51,17 @@ public class Procedure {
 
 	/**
 	 * Gets cost of procedure.
-	 * @return	Cost of procedure
+	 * @return	Cost of procedure in cents
 	 */
-	public double getProcCost() {
+	public long getProcCost() {
 		return procCost;
 	}
 
 	/**
 	 * Sets cost of procedure.
-	 * @param procCost	Cost of procedure
+	 * @param procCost	Cost of procedure in cents
 	 */
-	public void setProcCost(double procCost) {
+	public void setProcCost(long procCost) {
 		this.procCost = procCost;
 	}
 
@@ -62,8 +73,18 @@ public class Procedure {
 		return proc;
 	}
 
+	/**
+	 * Appends cost and name of procedure for reports, as in toString.
+	 * @param buf	Buffer to append to
+	 * @return		The same buffer
+	 */
+	public StringBuilder appendTo(StringBuilder buf){
+		Money.append(buf.append('\u20ac'), procCost);
+		return buf.append(" \t").append(procName);
+	}
+
 	@Override
 	public String toString(){
-		return "\u20ac" + procCost + " \t" + procName;
+		return appendTo(new StringBuilder()).toString();
 	}
 }
\ No newline at end of file
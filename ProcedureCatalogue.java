@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Responsible for storing the procedures offered by the practice.
+ * Keeps procedures in order for display along with indexes by name and by procedure number,
+ * so duplicate checks and lookups do not need to search the list.
+ * Methods are synchronized so the API can read procedures while the GUI changes them.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class ProcedureCatalogue {
+
+	private ArrayList<Procedure> procedureList;
+	private HashMap<String, Procedure> byName;
+	private HashMap<Integer, Procedure> byNumber;
+
+	/**
+	 * Constructor that creates an empty catalogue.
+	 */
+	public ProcedureCatalogue(){
+		procedureList = new ArrayList<Procedure>();
+		byName = new HashMap<String, Procedure>();
+		byNumber = new HashMap<Integer, Procedure>();
+	}
+
+	/**
+	 * Adds a procedure to the catalogue.
+	 * @param name	Name of procedure
+	 * @param cost	Cost of procedure in cents
+	 * @return		Added procedure
+	 */
+	public synchronized Procedure add(String name, long cost){
+		return add(new Procedure(name, cost));
+	}
+
+	/**
+	 * Adds a procedure with a known procedure number to the catalogue, such as one read from file.
+	 * @param number	Number of procedure
+	 * @param name		Name of procedure
+	 * @param cost		Cost of procedure in cents
+	 * @return			Added procedure
+	 */
+	public synchronized Procedure add(int number, String name, long cost){
+		return add(new Procedure(number, name, cost));
+	}
+
+	/**
+	 * Adds a procedure to the catalogue and its indexes.
+	 * @param proc	Procedure to add
+	 * @return		Added procedure
+	 */
+	private Procedure add(Procedure proc){
+		procedureList.add(proc);
+		byName.put(proc.getProcName(), proc);
+		byNumber.put(proc.getProc(), proc);
+		return proc;
+	}
+
+	/**
+	 * Changes name and cost of a procedure.
+	 * @param index	Index of procedure
+	 * @param name	New name of procedure
+	 * @param cost	New cost of procedure in cents
+	 */
+	public synchronized void edit(int index, String name, long cost){
+		Procedure proc = procedureList.get(index);
+		byName.remove(proc.getProcName());
+		proc.setProcName(name);
+		proc.setProcCost(cost);
+		byName.put(name, proc);
+	}
+
+	/**
+	 * Removes a procedure from the catalogue.
+	 * @param index	Index of procedure
+	 */
+	public synchronized void remove(int index){
+		Procedure proc = procedureList.remove(index);
+		byName.remove(proc.getProcName());
+		byNumber.remove(proc.getProc());
+	}
+
+	/**
+	 * Gets a procedure by its position in the catalogue.
+	 * @param index	Index of procedure
+	 * @return		Procedure at the index
+	 */
+	public synchronized Procedure get(int index){
+		return procedureList.get(index);
+	}
+
+	/**
+	 * Gets a procedure by its number.
+	 * @param number	Number of procedure
+	 * @return			Procedure with the number, or null if there is none
+	 */
+	public synchronized Procedure getByNumber(int number){
+		return byNumber.get(number);
+	}
+
+	/**
+	 * Gets a procedure by its name.
+	 * @param name	Name of procedure
+	 * @return		Procedure with the name, or null if there is none
+	 */
+	public synchronized Procedure getByName(String name){
+		return byName.get(name);
+	}
+
+	/**
+	 * Checks if a procedure with the given name exists.
+	 * @param name	Name of procedure
+	 * @return		True if a procedure has the name
+	 */
+	public synchronized boolean contains(String name){
+		return byName.containsKey(name);
+	}
+
+	/**
+	 * Gets amount of procedures in the catalogue.
+	 * @return	Procedure count
+	 */
+	public synchronized int size(){
+		return procedureList.size();
+	}
+}
\ No newline at end of file
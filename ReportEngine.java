@@ -0,0 +1,452 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntConsumer;
+
+/**
+ * Responsible for writing reports on patients without changing the order of the patients in the system.
+ *
+ * Reports are written from sorted copies of the patients. The copies are kept and reused by later reports
+ * until patients are added or removed, or for the unpaid report until an outstanding amount changes.
+ * Patients are streamed to the report file one at a time rather than built up into one String first.
+ * Large reports are rendered in parallel: patients are split into chunks, each chunk is rendered
+ * into its own buffer on a fork/join pool and the buffers are written in order.
+ * The output format of a report is chosen from FORMATS.
+ * To write a report in the background while patients keep changing, the report is written from a snapshot of the engine.
+ * Snapshots may be taken on any thread. Each patient is copied while holding its lock, and the sorted order of the
+ * copies is kept for the next snapshot unless a patient or amount changes while they are copied and sorted.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class ReportEngine {
+
+	//Report modes
+	final static int BY_NAME = 0;
+	final static int BY_UNPAID = 1;
+	final static int BY_AGE = 2;
+
+	final static int[] AGING_DAYS = {30, 60, 90, 180};	//Ages in days where aging report buckets start
+	final static int UNPAID_MONTHS = 6;	//Months an invoice is unpaid before the unpaid report lists its patient
+	final static int PARALLELISM = Integer.getInteger("dentistry.report.parallelism", Runtime.getRuntime().availableProcessors());	//Threads rendering a report, 1 renders on the calling thread
+	final static int CHUNK = Integer.getInteger("dentistry.report.chunk", 512);	//Patients rendered into one buffer
+
+	//Output formats of reports
+	final static ReportWriter[] FORMATS = {new TextReportWriter(), new CsvReportWriter(), new JsonReportWriter(), new FixedWidthReportWriter()};
+
+	final private static List<Patient> SORTING = Collections.unmodifiableList(new ArrayList<Patient>());	//Marks patients being copied and sorted
+
+	private static ForkJoinPool pool;	//Renders reports, created by the first parallel report
+
+	private Map<Integer, Patient> patients;	//Patients in the system by patient number
+	private AgingIndex aging;
+	final private AtomicReference<List<Patient>> byName = new AtomicReference<List<Patient>>();		//Patients sorted by name, null until sorted again
+	final private AtomicReference<List<Patient>> byUnpaid = new AtomicReference<List<Patient>>();	//Patients unpaid over UNPAID_MONTHS sorted by outstanding amount, null until sorted again
+	private int sorts;	//Sorts done since the last report was written
+	private boolean parallel;	//Set when the last report was rendered in parallel
+	private IntConsumer progress;	//Told how many patients are written as a report goes on, may be null
+	private int done;	//Patients written so far in the report being written
+
+	/**
+	 * Constructor that creates an engine reporting on the given patients.
+	 * @param patients	Patients in the system by patient number, read but never changed
+	 * @param aging		Index of patients with unpaid invoices
+	 */
+	public ReportEngine(Map<Integer, Patient> patients, AgingIndex aging){
+		this.patients = patients;
+		this.aging = aging;
+	}
+
+	/**
+	 * Drops sorted copies after a patient is added or removed.
+	 */
+	public void patientsChanged(){
+		drop(byName);
+		drop(byUnpaid);
+	}
+
+	/**
+	 * Drops the copy sorted by outstanding amount after an amount changes.
+	 */
+	public void balancesChanged(){
+		drop(byUnpaid);
+	}
+
+	/**
+	 * Drops a sorted copy, or stops one being sorted from being kept.
+	 * Only writes when there is something to drop, so threads changing amounts do not slow each other down.
+	 * @param sorted	Sorted copy to drop
+	 */
+	private static void drop(AtomicReference<List<Patient>> sorted){
+		if(sorted.get() != null)
+			sorted.set(null);
+	}
+
+	/**
+	 * Sets what is told how many patients are written as a report goes on.
+	 * @param progress	Called with the amount of patients written after each chunk, null for none
+	 */
+	public void setProgress(IntConsumer progress){
+		this.progress = progress;
+	}
+
+	/**
+	 * Copies the engine and its patients so a report can be written on another thread while patients keep changing.
+	 * Patients are sorted for the report first, so the sorted copies are kept here for later reports.
+	 * @param mode	Mode of the report to be written from the copy
+	 * @return		Engine over copies of the patients
+	 */
+	public ReportEngine snapshot(int mode){
+		//Mark the sorted copy as being made, so a change while copying patients stops it being kept
+		boolean keepName = mode == BY_NAME && byName.compareAndSet(null, SORTING);
+		boolean keepUnpaid = mode == BY_UNPAID && byUnpaid.compareAndSet(null, SORTING);
+
+		//Copy each patient while no other thread changes it, and index the copies by age of oldest unpaid invoice
+		LinkedHashMap<Integer, Patient> copies = new LinkedHashMap<Integer, Patient>(patients.size() * 4 / 3 + 1);
+		AgingIndex copyAging = new AgingIndex();
+		for(Patient patient : patients.values()){
+			Patient copy;
+			Lock lock = PatientLocks.read(patient.getPatient());
+			lock.lock();
+			try{
+				copy = patient.snapshot();
+			}
+			finally{
+				lock.unlock();
+			}
+			copies.put(copy.getPatient(), copy);
+			copyAging.update(copy.getPatient(), copy.getOldestUnpaid());
+		}
+		ReportEngine copy = new ReportEngine(copies, copyAging);
+
+		//Sort the copies, starting from the order sorted before when it holds the same patients
+		if(mode == BY_NAME){
+			List<Patient> sorted = copy.sort(copy.byName, byName.get(), copies.keySet(), copies.values(), null);
+			if(keepName)
+				byName.compareAndSet(SORTING, Collections.unmodifiableList(pats(numbers(sorted))));
+		}
+		else if(mode == BY_UNPAID){
+			List<Integer> unpaid = copyAging.olderThan(dueBefore(System.currentTimeMillis()));
+			List<Patient> sorted = copy.sort(copy.byUnpaid, byUnpaid.get(), new HashSet<Integer>(unpaid), copy.pats(unpaid), Patient.PatientUnpaidComparator);
+			if(keepUnpaid)
+				byUnpaid.compareAndSet(SORTING, Collections.unmodifiableList(pats(numbers(sorted))));
+		}
+		return copy;
+	}
+
+	/**
+	 * Sorts patients of this engine into a sorted copy.
+	 * Patients are put in the order of an earlier sorted copy first when it holds the same patients,
+	 * so sorting only checks the order, unless amounts or names changed since.
+	 * @param into		Sorted copy to set
+	 * @param order		Earlier sorted copy of patients, possibly of another engine, may be null
+	 * @param members	Numbers of patients to sort
+	 * @param pats		Patients to sort, used when the earlier order does not hold the same patients
+	 * @param compare	Order to sort in, null to sort by name
+	 * @return			Sorted patients
+	 */
+	private List<Patient> sort(AtomicReference<List<Patient>> into, List<Patient> order, Set<Integer> members, Collection<Patient> pats, Comparator<Patient> compare){
+		ArrayList<Patient> sorted = null;
+		if(order != null && order != SORTING){
+			sorted = new ArrayList<Patient>(members.size());
+			for(int a = 0; a < order.size(); a++){
+				if(members.contains(order.get(a).getPatient()))
+					sorted.add(patients.get(order.get(a).getPatient()));
+			}
+			if(sorted.size() != members.size())
+				sorted = null;
+		}
+		if(sorted == null){
+			sorted = new ArrayList<Patient>(pats);
+			sorts++;
+		}
+		sorted.sort(compare);
+		List<Patient> result = Collections.unmodifiableList(sorted);
+		into.set(result);
+		return result;
+	}
+
+	/**
+	 * Gets patients sorted by name, sorting them only if they changed since the last report.
+	 * Only used on engines whose patients are not changed by other threads, such as snapshots.
+	 * @return	Patients in ascending order by name
+	 */
+	public List<Patient> byName(){
+		List<Patient> sorted = byName.get();
+		if(sorted == null || sorted == SORTING)
+			sorted = sort(byName, null, patients.keySet(), patients.values(), null);
+		return sorted;
+	}
+
+	/**
+	 * Gets patients with an invoice unpaid over UNPAID_MONTHS sorted by outstanding amount.
+	 * Only those patients are taken from the aging index and sorted, rather than every patient with an unpaid invoice.
+	 * The order sorted for the last report is reused while it holds the same patients and no amount changed since.
+	 * Only used on engines whose patients are not changed by other threads, such as snapshots.
+	 * @param now	Current time for working out how long invoices are unpaid
+	 * @return		Patients in descending order by outstanding amount
+	 */
+	public List<Patient> byUnpaid(long now){
+		List<Integer> unpaid = aging.olderThan(dueBefore(now));
+		return sort(byUnpaid, byUnpaid.get(), new HashSet<Integer>(unpaid), pats(unpaid), Patient.PatientUnpaidComparator);
+	}
+
+	/**
+	 * Gets the time invoices have to be older than to be unpaid over UNPAID_MONTHS.
+	 * @param now	Current time
+	 * @return		Time in milliseconds
+	 */
+	private static long dueBefore(long now){
+		return now - Patient.MONTH * UNPAID_MONTHS;
+	}
+
+	/**
+	 * Writes a report to a file.
+	 * @param mode		Mode of report, BY_NAME, BY_UNPAID or BY_AGE
+	 * @param format	Output format of report
+	 * @param file		Name of file to write to
+	 * @param total		Outstanding amount of all patients in cents
+	 * @return			Summary of the report
+	 * @throws IOException	If the file cannot be written
+	 */
+	public String write(int mode, ReportWriter format, String file, long total) throws IOException {
+		long start = System.nanoTime();
+		int written;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 65536)) {
+			written = write(mode, format, writer, System.currentTimeMillis(), total);
+		}
+		String summary = written + " patients in " + (System.nanoTime() - start) / 1000000 + " ms";
+		if(sorts == 0)
+			summary += ", reused sorted patients";
+		if(parallel)
+			summary += ", " + PARALLELISM + " threads";
+		sorts = 0;
+		return summary;
+	}
+
+	/**
+	 * Writes a report to a writer.
+	 * Depending on mode writes report in 3 ways:
+	 * BY_NAME = Report of patients sorted in ascending order by name.
+	 * BY_UNPAID = Report of patients sorted by amount unpaid over 6 months in descending order.
+	 * BY_AGE = Report of patients with unpaid invoices grouped by age of their oldest unpaid invoice.
+	 * @param mode		Mode of report
+	 * @param format	Output format of report
+	 * @param writer	Writer to write to
+	 * @param now		Current time for working out how long invoices are unpaid
+	 * @param total		Outstanding amount of all patients in cents
+	 * @return			Amount of patients written
+	 * @throws IOException	If writing fails
+	 */
+	public int write(int mode, ReportWriter format, Writer writer, long now, long total) throws IOException {
+		parallel = false;
+		done = 0;
+		int written = 0;
+		StringBuilder buf = new StringBuilder();	//Report text other than patients
+		if(mode == BY_NAME){
+			format.begin(buf, "Report of patients sorted by name.", false);
+			format.line(buf, "");
+			writer.append(buf);
+			written += writePats(writer, format, byName(), null, true);
+		}
+		else if(mode == BY_UNPAID){
+			format.begin(buf, "Report of patients sorted by unpaid over 6 months.", false);
+			format.line(buf, "Total outstanding of all patients: \u20ac" + Money.format(total));
+			format.line(buf, "");
+			writer.append(buf);
+
+			//Write patients with an unpaid invoice over 6 months
+			written += writePats(writer, format, byUnpaid(now), null, true);
+		}
+		else{
+			format.begin(buf, "Report of patients by age of oldest unpaid invoice.", true);
+			format.line(buf, "Total outstanding of all patients: \u20ac" + Money.format(total));
+
+			//Sort patients into buckets in one pass over the aging index
+			List<List<Integer>> buckets = aging.buckets(now, AGING_DAYS);
+			for(int a = 0; a < buckets.size(); a++){
+				List<Patient> bucket = pats(buckets.get(a));
+				long outstanding = 0;
+				for(int b = 0; b < bucket.size(); b++)
+					outstanding += bucket.get(b).getOutstanding();
+
+				//Write bucket heading and patient data
+				String heading;
+				if(a == buckets.size()-1)
+					heading = AGING_DAYS[a] + " days and over";
+				else
+					heading = AGING_DAYS[a] + " to " + (AGING_DAYS[a+1] - 1) + " days";
+				format.line(buf, "");
+				format.line(buf, heading + " (" + bucket.size() + " patients, \u20ac" + Money.format(outstanding) + " outstanding):");
+				writer.append(buf);
+				buf.setLength(0);
+				written += writePats(writer, format, bucket, heading, false);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Writes patient data in order, rendering chunks of patients in parallel when there is more than one chunk.
+	 * @param writer	Writer to write to
+	 * @param format	Output format of report
+	 * @param pats		Patients to write
+	 * @param bucket	Age bucket the patients are in, null when not grouped into buckets
+	 * @param separate	Set to separate patients from each other
+	 * @return			Amount of patients written
+	 * @throws IOException	If writing fails
+	 */
+	private int writePats(Writer writer, ReportWriter format, List<Patient> pats, String bucket, boolean separate) throws IOException {
+		//Small reports are not worth handing to other threads
+		if(PARALLELISM <= 1 || pats.size() <= CHUNK){
+			StringBuilder buf = new StringBuilder();
+			for(int a = 0; a < pats.size(); a++){
+				buf.setLength(0);
+				format.patient(buf, pats.get(a), bucket, separate && a != 0);
+				writer.append(buf);
+				if(++done % CHUNK == 0 && progress != null)
+					progress.accept(done);
+			}
+			return pats.size();
+		}
+
+		//Render a few chunks per thread at a time so the whole report is never held in memory
+		parallel = true;
+		int window = CHUNK * PARALLELISM * 4;
+		for(int start = 0; start < pats.size(); start += window){
+			int end = Math.min(start + window, pats.size());
+			StringBuilder[] parts = new StringBuilder[(end - start + CHUNK - 1) / CHUNK];
+			pool().invoke(new RenderTask(format, pats, start, start, end, bucket, separate, parts));
+			for(int a = 0; a < parts.length; a++)
+				writer.append(parts[a]);
+			done += end - start;
+			if(progress != null)
+				progress.accept(done);
+		}
+		return pats.size();
+	}
+
+	/**
+	 * Gets the pool rendering reports, creating it on first use.
+	 * @return	Pool with PARALLELISM threads
+	 */
+	private static synchronized ForkJoinPool pool(){
+		if(pool == null)
+			pool = new ForkJoinPool(PARALLELISM);
+		return pool;
+	}
+
+	/**
+	 * Appends a date as yyyy-MM-dd in the local time zone. Safe to call from several threads.
+	 * @param buf	Buffer to append to
+	 * @param time	Time in milliseconds
+	 * @return		The same buffer
+	 */
+	static StringBuilder appendDate(StringBuilder buf, long time){
+		DateTimeFormatter.ISO_LOCAL_DATE.formatTo(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()), buf);
+		return buf;
+	}
+
+	/**
+	 * Gets patient numbers of patients.
+	 * @param pats	Patients
+	 * @return		Numbers of the patients in the same order
+	 */
+	private static List<Integer> numbers(List<Patient> pats){
+		ArrayList<Integer> numbers = new ArrayList<Integer>(pats.size());
+		for(int a = 0; a < pats.size(); a++)
+			numbers.add(pats.get(a).getPatient());
+		return numbers;
+	}
+
+	/**
+	 * Gets patients by patient number, leaving out patients removed since.
+	 * @param numbers	Numbers of patients
+	 * @return			Patients in the same order
+	 */
+	private ArrayList<Patient> pats(List<Integer> numbers){
+		ArrayList<Patient> pats = new ArrayList<Patient>(numbers.size());
+		for(int a = 0; a < numbers.size(); a++){
+			Patient patient = patients.get(numbers.get(a));
+			if(patient != null)
+				pats.add(patient);
+		}
+		return pats;
+	}
+
+	/**
+	 * Renders a range of patients into one buffer per chunk, splitting the range in half until it is one chunk.
+	 * Each patient is rendered by one thread only, so invoices a patient decodes on first use stay on that thread.
+	 */
+	private static class RenderTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private ReportWriter format;
+		private List<Patient> pats;
+		private int base;	//Index of patient in the first chunk of parts
+		private int from;
+		private int to;
+		private String bucket;	//Age bucket of the patients, may be null
+		private boolean separate;
+		private StringBuilder[] parts;	//Rendered chunks in order
+
+		/**
+		 * Constructor for a task rendering patients from index from up to but not including index to.
+		 * @param format	Output format of report
+		 * @param pats		Patients being written
+		 * @param base		Index of patient in the first chunk of parts
+		 * @param from		Index of first patient, at the start of a chunk
+		 * @param to		Index after last patient
+		 * @param bucket	Age bucket of the patients, null when not grouped into buckets
+		 * @param separate	Set to separate patients from each other
+		 * @param parts		Buffers for the rendered chunks
+		 */
+		RenderTask(ReportWriter format, List<Patient> pats, int base, int from, int to, String bucket, boolean separate, StringBuilder[] parts){
+			this.format = format;
+			this.pats = pats;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+			this.bucket = bucket;
+			this.separate = separate;
+			this.parts = parts;
+		}
+
+		@Override
+		protected void compute(){
+			//Render a single chunk
+			if(to - from <= CHUNK){
+				StringBuilder buf = new StringBuilder();
+				for(int a = from; a < to; a++)
+					format.patient(buf, pats.get(a), bucket, separate && a != 0);
+				parts[(from - base) / CHUNK] = buf;
+			}
+
+			//Split on a chunk boundary
+			else{
+				int chunks = (to - from + CHUNK - 1) / CHUNK;
+				int mid = from + chunks / 2 * CHUNK;
+				invokeAll(new RenderTask(format, pats, base, from, mid, bucket, separate, parts), new RenderTask(format, pats, base, mid, to, bucket, separate, parts));
+			}
+		}
+	}
+}
\ No newline at end of file
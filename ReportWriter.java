@@ -0,0 +1,42 @@
+/**
+ * Responsible for the output format of a report.
+ *
+ * Reports are written record by record: the report engine asks the format to append the title,
+ * each line of report text and each patient to a buffer, and writes the buffer out before the next record.
+ * Patients may be appended from several threads at once, each into its own buffer.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public interface ReportWriter {
+
+	/**
+	 * Gets name of the format shown to the user.
+	 * @return	Name of format
+	 */
+	String getName();
+
+	/**
+	 * Appends the start of the report.
+	 * @param buf		Buffer to append to
+	 * @param title		Title of report
+	 * @param buckets	Set when patients are grouped into age buckets, so each patient is appended with its bucket
+	 */
+	void begin(StringBuilder buf, String title, boolean buckets);
+
+	/**
+	 * Appends a line of report text, such as a total or a heading. Formats holding only patient records may leave it out.
+	 * @param buf	Buffer to append to
+	 * @param line	Line of text, empty for a blank line
+	 */
+	void line(StringBuilder buf, String line);
+
+	/**
+	 * Appends the record of a patient.
+	 * Formats leaving out report text add the bucket to the record, as they leave out the bucket headings.
+	 * @param buf		Buffer to append to
+	 * @param patient	Patient to append
+	 * @param bucket	Age bucket of the patient such as 30 to 59 days, null when patients are not grouped into buckets
+	 * @param between	Set when the patient follows another patient the report separates it from
+	 */
+	void patient(StringBuilder buf, Patient patient, String bucket, boolean between);
+}
\ No newline at end of file
@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Responsible for finding patients by any part of their name, address or phone number.
+ *
+ * Every three letters in a row of each field are indexed, so a search only visits patients holding all
+ * three letter groups of the search. Searches of one or two letters match the start of a word instead,
+ * using groups padded with spaces at the start of each word. Candidates for words of more than three letters
+ * are checked against their text, so a search never returns a patient that does not match.
+ * Each word of a search has to match for a patient to be found.
+ * Searches run at the same time as each other, while adding or removing a patient waits for searches to finish.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class SearchIndex {
+
+	final private static char FIELD_END = '\u0000';	//Separates fields in the text of a patient
+
+	private HashMap<Long, Postings> grams;	//Patient numbers holding each group of three letters
+	private HashMap<Integer, String> texts;	//Searchable text of each patient in lower case
+	final private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();	//Held for reading by searches and for writing by changes
+
+	/**
+	 * Constructor that creates an empty index.
+	 */
+	public SearchIndex(){
+		grams = new HashMap<Long, Postings>();
+		texts = new HashMap<Integer, String>();
+	}
+
+	/**
+	 * Adds a patient to the index, replacing them if already indexed.
+	 * @param patient	Patient to add
+	 */
+	public void add(Patient patient){
+		String text = (patient.getName() + FIELD_END + patient.getAddress() + FIELD_END + patient.getNum()).toLowerCase(Locale.ROOT);
+		long[] textGrams = grams(text);
+		lock.writeLock().lock();
+		try{
+			remove(patient.getPatient());
+			texts.put(patient.getPatient(), text);
+			for(long gram : textGrams){
+				Postings postings = grams.get(gram);
+				if(postings == null){
+					postings = new Postings();
+					grams.put(gram, postings);
+				}
+				postings.add(patient.getPatient());
+			}
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a patient from the index.
+	 * @param patient	Number of patient
+	 */
+	public void remove(int patient){
+		lock.writeLock().lock();
+		try{
+			String text = texts.remove(patient);
+			if(text == null)
+				return;
+			for(long gram : grams(text)){
+				Postings postings = grams.get(gram);
+				postings.remove(patient);
+				if(postings.size == 0)
+					grams.remove(gram);
+			}
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds patients matching every word of a search.
+	 * @param search	Words to search for, in any case
+	 * @return			Numbers of matching patients in ascending order
+	 */
+	public List<Integer> search(String search){
+		String[] words = search.toLowerCase(Locale.ROOT).trim().split("\\s+");
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		if(words[0].isEmpty())
+			return found;
+		lock.readLock().lock();
+		try{
+			return search(words, found);
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds patients matching every word of a search while holding the read lock.
+	 * @param words	Words in lower case
+	 * @param found	List to add matching patient numbers to
+	 * @return		The same list
+	 */
+	private List<Integer> search(String[] words, ArrayList<Integer> found){
+
+		//Find the group of letters each word needs, fewest patients first
+		ArrayList<Postings> needed = new ArrayList<Postings>();
+		for(String word : words){
+			long[] wordGrams;
+			if(word.length() == 1)
+				wordGrams = new long[]{gram(' ', ' ', word.charAt(0))};
+			else if(word.length() == 2)
+				wordGrams = new long[]{gram(' ', word.charAt(0), word.charAt(1))};
+			else
+				wordGrams = grams(word, false);
+			for(long gram : wordGrams){
+				Postings postings = grams.get(gram);
+				if(postings == null)
+					return found;
+				needed.add(postings);
+			}
+		}
+		needed.sort((a, b) -> Integer.compare(a.size, b.size));
+
+		//Check patients holding the rarest group against the other groups, and against their text
+		//for words longer than one group as their groups may be in the wrong order
+		Postings rarest = needed.get(0);
+		for(int a = 0; a < rarest.size; a++){
+			int patient = rarest.items[a];
+			boolean match = true;
+			for(int b = 1; b < needed.size() && match; b++)
+				match = needed.get(b).contains(patient);
+			for(int b = 0; b < words.length && match; b++){
+				if(words[b].length() > 3)
+					match = texts.get(patient).contains(words[b]);
+			}
+			if(match)
+				found.add(patient);
+		}
+		return found;
+	}
+
+	/**
+	 * Gets amount of patients in the index.
+	 * @return	Indexed patients
+	 */
+	public int size(){
+		lock.readLock().lock();
+		try{
+			return texts.size();
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the groups of letters of a patient's text, including groups padded with spaces at the start of each word.
+	 * @param text	Text of patient
+	 * @return		Groups of letters, without repeats
+	 */
+	private static long[] grams(String text){
+		return grams(text, true);
+	}
+
+	/**
+	 * Gets the groups of three letters in a row of text. Groups do not run across fields.
+	 * @param text		Text to split
+	 * @param starts	Set to add groups padded with spaces at the start of each word
+	 * @return			Groups of letters, without repeats
+	 */
+	private static long[] grams(String text, boolean starts){
+		long[] found = new long[text.length() * 3];
+		int count = 0;
+		for(int a = 0; a < text.length(); a++){
+			char c = text.charAt(a);
+			if(c == FIELD_END || Character.isWhitespace(c))
+				continue;
+
+			//Groups starting a word
+			boolean wordStart = a == 0 || text.charAt(a-1) == FIELD_END || Character.isWhitespace(text.charAt(a-1));
+			if(starts && wordStart){
+				found[count++] = gram(' ', ' ', c);
+				if(a + 1 < text.length() && text.charAt(a+1) != FIELD_END && !Character.isWhitespace(text.charAt(a+1)))
+					found[count++] = gram(' ', c, text.charAt(a+1));
+			}
+
+			//Group of this and the next two letters
+			if(a + 2 < text.length() && text.charAt(a+1) != FIELD_END && text.charAt(a+2) != FIELD_END)
+				found[count++] = gram(c, text.charAt(a+1), text.charAt(a+2));
+		}
+
+		//Drop repeats so each patient is added to each group once
+		Arrays.sort(found, 0, count);
+		int unique = 0;
+		for(int a = 0; a < count; a++){
+			if(unique == 0 || found[unique-1] != found[a])
+				found[unique++] = found[a];
+		}
+		return Arrays.copyOf(found, unique);
+	}
+
+	/**
+	 * Packs three letters into one key.
+	 * @param a	First letter
+	 * @param b	Second letter
+	 * @param c	Third letter
+	 * @return	Key of the group
+	 */
+	private static long gram(char a, char b, char c){
+		return (long)a << 32 | (long)b << 16 | c;
+	}
+
+	/**
+	 * Responsible for keeping patient numbers holding a group of letters in ascending order in an array.
+	 */
+	private static class Postings {
+
+		private int[] items = new int[2];
+		private int size;
+
+		/**
+		 * Adds a patient number, keeping the order. Numbers handed out later are added to the end.
+		 * @param patient	Number of patient
+		 */
+		void add(int patient){
+			int pos = size == 0 || items[size-1] < patient ? size : Arrays.binarySearch(items, 0, size, patient);
+			if(pos >= 0 && pos < size)
+				return;
+			if(pos < 0)
+				pos = -pos - 1;
+			if(size == items.length)
+				items = Arrays.copyOf(items, size * 2);
+			System.arraycopy(items, pos, items, pos + 1, size - pos);
+			items[pos] = patient;
+			size++;
+		}
+
+		/**
+		 * Removes a patient number.
+		 * @param patient	Number of patient
+		 */
+		void remove(int patient){
+			int pos = Arrays.binarySearch(items, 0, size, patient);
+			if(pos < 0)
+				return;
+			System.arraycopy(items, pos + 1, items, pos, size - pos - 1);
+			size--;
+		}
+
+		/**
+		 * Checks if a patient number is held.
+		 * @param patient	Number of patient
+		 * @return			True if held
+		 */
+		boolean contains(int patient){
+			return Arrays.binarySearch(items, 0, size, patient) >= 0;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,249 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Responsible for saving patients split across segment files so a save only rewrites changed segments.
+ *
+ * Patients are kept in segments of up to a fixed amount of patients, in the order they were added.
+ * New patients go into the last segment, and a new segment is started once it is full.
+ * A save rewrites only the segments that hold a changed or new patient or that lost a patient.
+ *
+ * Changed segments are written to new files and then the manifest listing the files that make up the store
+ * is replaced, so the store only changes once the manifest is in place. Files no longer listed are then deleted.
+ * Segment files use the text patient format.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class SegmentedPatientStore {
+
+	final static String MANIFEST = "manifest.txt";
+
+	private String dir;
+	private int segmentSize;
+	private long generation;	//Incremented on every save, used to name new segment files
+	private LinkedHashMap<Integer, String> files;	//File of each segment, in store order
+	private HashMap<Integer, Integer> sizes;	//Amount of patients saved in each segment
+	private int written;
+	private int skipped;
+
+	/**
+	 * Constructor that creates a store in the given directory.
+	 * @param dir			Directory of the store
+	 * @param segmentSize	Amount of patients per segment
+	 */
+	public SegmentedPatientStore(String dir, int segmentSize){
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		generation = 0;
+		files = new LinkedHashMap<Integer, String>();
+		sizes = new HashMap<Integer, Integer>();
+		written = 0;
+		skipped = 0;
+	}
+
+	/**
+	 * Checks if a directory holds a segmented store.
+	 * @param dir	Directory to check
+	 * @return		True if the directory has a manifest
+	 */
+	public static boolean exists(String dir){
+		return new File(dir, MANIFEST).exists();
+	}
+
+	/**
+	 * Gets the manifest file of the store, which changes on every save.
+	 * @return	Path of the manifest
+	 */
+	public Path getManifest(){
+		return Paths.get(dir, MANIFEST);
+	}
+
+	/**
+	 * Reads all patients from the store in store order.
+	 * @return	Patients read from the store
+	 * @throws IOException	If the manifest or a segment cannot be read
+	 */
+	public ArrayList<Patient> read() throws IOException {
+		ArrayList<Patient> patients = new ArrayList<Patient>();
+		files.clear();
+		sizes.clear();
+		if(!exists(dir))
+			return patients;
+
+		//Read manifest
+		try (BufferedReader br = new BufferedReader(new FileReader(getManifest().toFile()))){
+			generation = Long.parseLong(br.readLine());
+			int segments = Integer.parseInt(br.readLine());
+			for(int a = 0; a < segments; a++){
+				String[] entry = br.readLine().split(" ");
+				files.put(Integer.parseInt(entry[0]), entry[1]);
+			}
+		}
+
+		//Read segments in order
+		for(Map.Entry<Integer, String> entry : files.entrySet()){
+			ArrayList<Patient> segment = MainApplication.readPats(Paths.get(dir, entry.getValue()).toString());
+			for(int a = 0; a < segment.size(); a++)
+				segment.get(a).setSegment(entry.getKey());
+			sizes.put(entry.getKey(), segment.size());
+			patients.addAll(segment);
+		}
+		return patients;
+	}
+
+	/**
+	 * Saves patients, rewriting only the segments that changed.
+	 * @param patients	Patients to save, in store order
+	 * @return			Summary of the save
+	 * @throws IOException	If a segment or the manifest cannot be written
+	 */
+	public String write(Collection<Patient> patients) throws IOException {
+		long start = System.nanoTime();
+		long records = 0;
+		Files.createDirectories(Paths.get(dir));
+
+		//Find the last segment and how full it is
+		int last = -1;
+		int lastCount = 0;
+		int next = 0;
+		for(Integer segment : files.keySet())
+			next = Math.max(next, segment + 1);
+		for(Patient patient : patients){
+			int segment = patient.getSegment();
+			if(segment != -1){
+				if(segment != last)
+					lastCount = 0;
+				last = segment;
+				lastCount++;
+				next = Math.max(next, segment + 1);
+			}
+		}
+
+		//Group patients by segment, placing new patients into the last segment
+		LinkedHashMap<Integer, ArrayList<Patient>> segments = new LinkedHashMap<Integer, ArrayList<Patient>>();
+		HashMap<Integer, Boolean> changed = new HashMap<Integer, Boolean>();
+		for(Patient patient : patients){
+			if(patient.getSegment() == -1){
+				if(last == -1 || lastCount >= segmentSize){
+					last = next++;
+					lastCount = 0;
+				}
+				patient.setSegment(last);
+				lastCount++;
+			}
+			ArrayList<Patient> segment = segments.get(patient.getSegment());
+			if(segment == null){
+				segment = new ArrayList<Patient>();
+				segments.put(patient.getSegment(), segment);
+				changed.put(patient.getSegment(), false);
+			}
+			segment.add(patient);
+			if(patient.isDirty())
+				changed.put(patient.getSegment(), true);
+		}
+
+		//Write segments that changed to new files
+		generation++;
+		LinkedHashMap<Integer, String> newFiles = new LinkedHashMap<Integer, String>();
+		ArrayList<String> obsolete = new ArrayList<String>();
+		ArrayList<Patient> saved = new ArrayList<Patient>();
+		written = 0;
+		skipped = 0;
+		for(Map.Entry<Integer, ArrayList<Patient>> entry : segments.entrySet()){
+			int segment = entry.getKey();
+			ArrayList<Patient> segmentPats = entry.getValue();
+			Integer size = sizes.get(segment);
+			if(changed.get(segment) || size == null || size != segmentPats.size() || !files.containsKey(segment)){
+				String file = "segment-" + segment + "-" + generation + ".txt";
+				MainApplication.writePats(Paths.get(dir, file).toString(), segmentPats, generation);
+				newFiles.put(segment, file);
+				if(files.containsKey(segment))
+					obsolete.add(files.get(segment));
+				saved.addAll(segmentPats);
+				records += segmentPats.size();
+				written++;
+			}
+			else{
+				newFiles.put(segment, files.get(segment));
+				skipped++;
+			}
+		}
+
+		//Segments with no patients left are dropped
+		for(Map.Entry<Integer, String> entry : files.entrySet()){
+			if(!segments.containsKey(entry.getKey()))
+				obsolete.add(entry.getValue());
+		}
+
+		//Replace manifest, after which the new segments are part of the store
+		writeManifest(newFiles);
+		files = newFiles;
+		sizes.clear();
+		for(Map.Entry<Integer, ArrayList<Patient>> entry : segments.entrySet())
+			sizes.put(entry.getKey(), entry.getValue().size());
+		for(int a = 0; a < saved.size(); a++)
+			saved.get(a).markSaved();
+
+		//Delete files no longer in the store
+		for(int a = 0; a < obsolete.size(); a++)
+			Files.deleteIfExists(Paths.get(dir, obsolete.get(a)));
+
+		return written + " of " + segments.size() + " segments written, " + skipped + " skipped, "
+				+ records + " patients in " + (System.nanoTime() - start) / 1000000 + " ms";
+	}
+
+	/**
+	 * Writes the manifest to a temporary file which then replaces the old manifest.
+	 * @param segmentFiles	File of each segment, in store order
+	 * @throws IOException	If the manifest cannot be written
+	 */
+	private void writeManifest(LinkedHashMap<Integer, String> segmentFiles) throws IOException {
+		Path temp = Paths.get(dir, MANIFEST + ".tmp");
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp.toFile()), StandardCharsets.UTF_8))) {
+			writer.write(generation + "\n" + segmentFiles.size() + "\n");
+			for(Map.Entry<Integer, String> entry : segmentFiles.entrySet())
+				writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+		}
+		Files.move(temp, getManifest(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Gets the generation of the store, which goes up with every save.
+	 * @return	Generation read from the manifest or written by the last save
+	 */
+	public long getGeneration(){
+		return generation;
+	}
+
+	/**
+	 * Gets amount of segments rewritten by the last save.
+	 * @return	Segments written
+	 */
+	public int getWritten(){
+		return written;
+	}
+
+	/**
+	 * Gets amount of segments left as they were by the last save.
+	 * @return	Segments skipped
+	 */
+	public int getSkipped(){
+		return skipped;
+	}
+}
\ No newline at end of file
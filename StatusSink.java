@@ -0,0 +1,23 @@
+/**
+ * Responsible for showing status messages and results of the application, such as in the GUI log or on a console.
+ * Background tasks such as saves and reports hand their results over through run,
+ * so each sink decides which thread shows them.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public interface StatusSink {
+
+	/**
+	 * Shows a status message, replacing the last one.
+	 * @param str	Status message
+	 */
+	void setLog(String str);
+
+	/**
+	 * Runs a task showing the result of a background task. Runs it straight away unless the sink needs its own thread.
+	 * @param task	Task to run
+	 */
+	default void run(Runnable task){
+		task.run();
+	}
+}
\ No newline at end of file
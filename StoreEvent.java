@@ -0,0 +1,76 @@
+/**
+ * Responsible for describing a change to the patients in the system, so views can update only what changed.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class StoreEvent {
+
+	//Types of change
+	final static int PAT_ADDED = 1;
+	final static int PAT_REMOVED = 2;
+	final static int INV_ADDED = 3;
+	final static int INV_REMOVED = 4;
+	final static int PROC_ADDED = 5;
+	final static int PROC_REMOVED = 6;
+	final static int PAY_ADDED = 7;
+	final static int PAY_REMOVED = 8;
+
+	private int type;
+	private int patient;
+	private int invoice;
+	private int index;
+
+	/**
+	 * Constructor for a change.
+	 * @param type		Type of change
+	 * @param patient	Number of patient changed
+	 * @param invoice	Number of invoice changed, -1 for a change to a patient
+	 * @param index		Index of procedure or payment changed, -1 for a change to a patient or invoice
+	 */
+	public StoreEvent(int type, int patient, int invoice, int index){
+		this.type = type;
+		this.patient = patient;
+		this.invoice = invoice;
+		this.index = index;
+	}
+
+	/**
+	 * Gets type of change.
+	 * @return	One of the types of change
+	 */
+	public int getType(){
+		return type;
+	}
+
+	/**
+	 * Gets number of patient changed.
+	 * @return	Number of patient
+	 */
+	public int getPatient(){
+		return patient;
+	}
+
+	/**
+	 * Gets number of invoice changed.
+	 * @return	Number of invoice, -1 for a change to a patient
+	 */
+	public int getInvoice(){
+		return invoice;
+	}
+
+	/**
+	 * Gets index of procedure or payment changed.
+	 * @return	Index on the invoice, -1 for a change to a patient or invoice
+	 */
+	public int getIndex(){
+		return index;
+	}
+
+	/**
+	 * Checks if the change alters the amounts of an invoice.
+	 * @return	True for procedures and payments added or removed
+	 */
+	public boolean isInvoiceChange(){
+		return type >= PROC_ADDED;
+	}
+}
\ No newline at end of file
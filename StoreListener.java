@@ -0,0 +1,14 @@
+/**
+ * Responsible for being told about changes to the patients in the system.
+ * Listeners are told on the thread making the change, after the change is made.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public interface StoreListener {
+
+	/**
+	 * Called after patients change.
+	 * @param event	Change made
+	 */
+	void changed(StoreEvent event);
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+/**
+ * Responsible for writing reports as readable text, with each patient written as in Patient.toString.
+ * Buckets of the aging report are shown by their headings rather than with each patient.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class TextReportWriter implements ReportWriter {
+
+	@Override
+	public String getName(){
+		return "Text";
+	}
+
+	@Override
+	public void begin(StringBuilder buf, String title, boolean buckets){
+		buf.append(title).append('\n');
+	}
+
+	@Override
+	public void line(StringBuilder buf, String line){
+		buf.append(line).append('\n');
+	}
+
+	@Override
+	public void patient(StringBuilder buf, Patient patient, String bucket, boolean between){
+		if(between)
+			buf.append('\n');
+		patient.appendTo(buf);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package dentistry.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares looking up dentists by name through a linear scan of the dentist list,
+ * as login and registration used to, against the index of dentists by name.
+ * One in ten names looked up is not registered.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class DentistLookupBenchmark {
+
+	@Param({"10", "100", "1000", "10000"})
+	public int dentists;
+
+	private ArrayList<Object> dentistList;
+	private HashMap<String, Object> dentistIndex;
+	private String[] names;
+	private int next;
+
+	/**
+	 * Creates the dentists in both a list and an index and picks the names to look up.
+	 */
+	@Setup(Level.Trial)
+	public void create() throws Throwable {
+		dentistList = new ArrayList<Object>();
+		dentistIndex = new HashMap<String, Object>();
+		for(int a = 0; a < dentists; a++){
+			Object dent = Dentistry.dentist(a);
+			dentistList.add(dent);
+			dentistIndex.put(Dentistry.dentistName(dent), dent);
+		}
+		names = new String[1024];
+		Random random = new Random(PatientData.SEED);
+		for(int a = 0; a < names.length; a++)
+			names[a] = a % 10 == 0 ? "Unknown " + a : "Dentist " + random.nextInt(dentists);
+	}
+
+	/**
+	 * Looks up the next name by scanning the whole list, as login used to.
+	 */
+	@Benchmark
+	public boolean scan() throws Throwable {
+		String name = names[next++ & (names.length - 1)];
+		int index = -1;
+		for(int b = 0; b < dentistList.size(); b++){
+			if(Dentistry.dentistName(dentistList.get(b)).equals(name))
+				index = b;
+		}
+		return index != -1;
+	}
+
+	/**
+	 * Looks up the next name through the index.
+	 */
+	@Benchmark
+	public boolean index(){
+		return dentistIndex.get(names[next++ & (names.length - 1)]) != null;
+	}
+}
@@ -0,0 +1,451 @@
+package dentistry.benchmarks;
+
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Responsible for reaching the application classes from the benchmarks.
+ *
+ * The application classes have no package, which JMH benchmarks cannot import, so they are looked up
+ * once by name and called through method handles held in constants, which the JIT compiles like direct calls.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+final class Dentistry {
+
+	final private static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	final static Class<?> PATIENT = type("Patient");
+	final static Class<?> DENTIST = type("Dentist");
+	final static Class<?> AGING = type("AgingIndex");
+	final static Class<?> ENGINE = type("ReportEngine");
+	final static Class<?> MAIN = type("MainApplication");
+	final static Class<?> JOURNAL = type("Journal");
+
+	//Patients
+	final private static MethodHandle NEW_PATIENT = constructor(PATIENT, String.class, String.class, String.class, String.class);
+	final private static MethodHandle ADD_INVOICE = method(PATIENT, "addInvoice", int.class);
+	final private static MethodHandle SET_INV_DATE = method(PATIENT, "setInvDate", void.class, int.class, long.class);
+	final private static MethodHandle ADD_PROCEDURE = method(PATIENT, "addProcedure", void.class, int.class, String.class, long.class);
+	final private static MethodHandle ADD_PAY = method(PATIENT, "addPay", void.class, int.class, long.class);
+	final private static MethodHandle SET_PAY_DATE = method(PATIENT, "setPayDate", void.class, int.class, int.class, long.class);
+	final private static MethodHandle GET_PATIENT = method(PATIENT, "getPatient", int.class);
+	final private static MethodHandle GET_OLDEST_UNPAID = method(PATIENT, "getOldestUnpaid", long.class);
+	final private static MethodHandle GET_OUTSTANDING = method(PATIENT, "getOutstanding", long.class);
+	final private static MethodHandle GET_INV_NUMS = method(PATIENT, "getInvNums", int[].class);
+	final static Comparator<Object> UNPAID_COMPARATOR = staticField(PATIENT, "PatientUnpaidComparator");
+
+	//Stores
+	final private static MethodHandle READ_TEXT = staticMethod(MAIN, "readPats", ArrayList.class, String.class);
+	final private static MethodHandle WRITE_TEXT = staticMethod(MAIN, "writePats", String.class, String.class, Collection.class);
+	final private static MethodHandle WRITE_BINARY = staticMethod(MAIN, "writePatsBin", String.class, String.class, Collection.class);
+	final private static MethodHandle MAP_BINARY = staticMethod(type("BinaryPatientReader"), "map", ArrayList.class, String.class);
+
+	//Patients in the system
+	final private static MethodHandle SET_PATS = privateStaticMethod(MAIN, "setPats", List.class);
+	final private static MethodHandle INDEX_PATS = privateStaticMethod(MAIN, "indexPats");
+	final private static MethodHandle OPEN_JOURNAL = staticMethod(JOURNAL, "open", JOURNAL, String.class, long.class, long.class, Map.class);
+	final private static MethodHandle CLOSE_JOURNAL = method(JOURNAL, "close", void.class);
+	final private static MethodHandle POST_PAY = staticMethod(MAIN, "addPay", boolean.class, int.class, int.class, String.class);
+	final private static MethodHandle TOTAL_OUTSTANDING = staticMethod(MAIN, "getTotalOutstanding", long.class);
+
+	//Login
+	final private static MethodHandle NEW_DENTIST = constructor(DENTIST, String.class, String.class, String.class);
+	final private static MethodHandle GET_DENTIST_NAME = method(DENTIST, "getName", String.class);
+	final private static MethodHandle CHECK_LOG_IN = staticMethod(MAIN, "checkLogIn", boolean.class, String.class, String.class);
+
+	//Reports
+	final private static MethodHandle NEW_AGING = constructor(AGING);
+	final private static MethodHandle AGING_UPDATE = method(AGING, "update", void.class, int.class, long.class);
+	final private static MethodHandle NEW_ENGINE = constructor(ENGINE, Map.class, AGING);
+	final private static MethodHandle WRITE_REPORT = method(ENGINE, "write", int.class, int.class, type("ReportWriter"), Writer.class, long.class, long.class);
+	final private static MethodHandle BALANCES_CHANGED = method(ENGINE, "balancesChanged", void.class);
+	final static Object[] FORMATS = staticField(ENGINE, "FORMATS");
+
+	final private static long DAY = 24L * 60 * 60 * 1000;
+	final private static String[] PROCEDURES = {"Cleaning", "Filling", "Extraction", "Root Canal", "Crown", "X-Ray"};
+
+	/**
+	 * Constructor is private as the class only has static methods.
+	 */
+	private Dentistry(){
+	}
+
+	/**
+	 * Creates patients with invoices and payments from a seed, so every run benchmarks the same patients.
+	 * Invoices are dated up to two years back and payments pay off part of them, so reports find both
+	 * paid and unpaid patients of every age.
+	 * @param seed		Seed of the random data
+	 * @param count		Amount of patients
+	 * @param invoices	Invoices per patient
+	 * @param payments	Payments per invoice
+	 * @param now		Time the data is created for
+	 * @return			Patients in the order they were created
+	 */
+	static List<Object> patients(long seed, int count, int invoices, int payments, long now){
+		Random random = new Random(seed);
+		ArrayList<Object> patients = new ArrayList<Object>(count);
+		try{
+			for(int a = 0; a < count; a++){
+				Object patient = NEW_PATIENT.invokeExact("Patient " + random.nextInt(count * 10), a + " Main Street", "08" + (1000000 + random.nextInt(9000000)), "Dentist " + a % 10);
+				for(int b = 0; b < invoices; b++){
+					int invoice = (int)ADD_INVOICE.invokeExact(patient);
+					long date = now - random.nextInt(730) * DAY;
+					SET_INV_DATE.invokeExact(patient, invoice, date);
+					long cost = 0;
+					for(int c = 1 + random.nextInt(3); c > 0; c--){
+						long procCost = 2000 + random.nextInt(20000);
+						ADD_PROCEDURE.invokeExact(patient, invoice, PROCEDURES[random.nextInt(PROCEDURES.length)], procCost);
+						cost += procCost;
+					}
+					for(int c = 0; c < payments; c++){
+						ADD_PAY.invokeExact(patient, invoice, cost / (payments + 1));
+						SET_PAY_DATE.invokeExact(patient, invoice, c, date + (c + 1) * DAY);
+					}
+				}
+				patients.add(patient);
+			}
+		}
+		catch (Throwable e){
+			throw new IllegalStateException("Could not create patients.", e);
+		}
+		return patients;
+	}
+
+	/**
+	 * Creates a report engine over patients, with the index of patients by age of their oldest unpaid invoice.
+	 * @param patients	Patients to report on
+	 * @return			Report engine
+	 */
+	static Object reports(List<Object> patients){
+		try{
+			Object aging = NEW_AGING.invokeExact();
+			Map<Integer, Object> byNumber = new HashMap<Integer, Object>();
+			for(Object patient : patients){
+				int number = (int)GET_PATIENT.invokeExact(patient);
+				byNumber.put(number, patient);
+				AGING_UPDATE.invokeExact(aging, number, (long)GET_OLDEST_UNPAID.invokeExact(patient));
+			}
+			return NEW_ENGINE.invokeExact((Map)byNumber, aging);
+		}
+		catch (Throwable e){
+			throw new IllegalStateException("Could not create report engine.", e);
+		}
+	}
+
+	/**
+	 * Registers dentists named "Dentist 0" and onwards, with passwords "pass0" and onwards, for logins.
+	 * @param count	Amount of dentists
+	 */
+	static void dentists(int count){
+		try{
+			ConcurrentHashMap<String, Object> index = new ConcurrentHashMap<String, Object>();
+			for(int a = 0; a < count; a++)
+				index.put("Dentist " + a, NEW_DENTIST.invokeExact("Dentist " + a, "Address " + a, "pass" + a));
+			Field field = MAIN.getDeclaredField("dentistIndex");
+			field.setAccessible(true);
+			field.set(null, index);
+		}
+		catch (Throwable e){
+			throw new IllegalStateException("Could not register dentists.", e);
+		}
+	}
+
+	/**
+	 * Puts patients in the system as loading them does, with a new journal recording changes to them.
+	 * The journal the system had before is closed.
+	 * @param patients	Patients in the order they were created
+	 * @param journal	Name of journal file, replaced if it exists
+	 */
+	static void load(List<Object> patients, String journal) throws Throwable {
+		Field journalField = MAIN.getDeclaredField("journal");
+		Field patientField = MAIN.getDeclaredField("patientMap");
+		journalField.setAccessible(true);
+		patientField.setAccessible(true);
+		Object old = journalField.get(null);
+		if(old != null)
+			CLOSE_JOURNAL.invokeExact(old);
+		Files.deleteIfExists(Paths.get(journal));
+
+		SET_PATS.invokeExact((List)patients);
+		journalField.set(null, OPEN_JOURNAL.invokeExact(journal, 0L, 100L, (Map)patientField.get(null)));
+		INDEX_PATS.invokeExact();
+	}
+
+	/**
+	 * Closes the journal of the system.
+	 */
+	static void closeJournal() throws Throwable {
+		Field journalField = MAIN.getDeclaredField("journal");
+		journalField.setAccessible(true);
+		Object journal = journalField.get(null);
+		if(journal != null)
+			CLOSE_JOURNAL.invokeExact(journal);
+		journalField.set(null, null);
+	}
+
+	/**
+	 * Posts a payment to an invoice as the GUI does.
+	 * @param patient	Number of patient
+	 * @param invoice	Number of invoice
+	 * @param amount	Amount of payment such as 12.50
+	 * @return			Validity of payment
+	 */
+	static boolean addPay(int patient, int invoice, String amount) throws Throwable {
+		return (boolean)POST_PAY.invokeExact(patient, invoice, amount);
+	}
+
+	/**
+	 * Gets the outstanding amount of all patients in the system as the system keeps it.
+	 * @return	Outstanding amount in cents
+	 */
+	static long totalOutstanding() throws Throwable {
+		return (long)TOTAL_OUTSTANDING.invokeExact();
+	}
+
+	/**
+	 * Gets the number of a patient.
+	 * @param patient	Patient
+	 * @return			Patient number
+	 */
+	static int number(Object patient) throws Throwable {
+		return (int)GET_PATIENT.invokeExact(patient);
+	}
+
+	/**
+	 * Gets the invoice numbers of a patient.
+	 * @param patient	Patient
+	 * @return			Invoice numbers
+	 */
+	static int[] invoices(Object patient) throws Throwable {
+		return (int[])GET_INV_NUMS.invokeExact(patient);
+	}
+
+	/**
+	 * Gets the outstanding amount of a patient.
+	 * @param patient	Patient
+	 * @return			Outstanding amount in cents
+	 */
+	static long outstanding(Object patient) throws Throwable {
+		return (long)GET_OUTSTANDING.invokeExact(patient);
+	}
+
+	/**
+	 * Reads patients from a text store.
+	 * @param file	Name of file
+	 * @return		Patients read
+	 */
+	static List<?> readText(String file) throws Throwable {
+		return (ArrayList<?>)READ_TEXT.invokeExact(file);
+	}
+
+	/**
+	 * Maps patients from a binary store. Invoices are decoded once they are used.
+	 * @param file	Name of file
+	 * @return		Patients read
+	 */
+	static List<?> mapBinary(String file) throws Throwable {
+		return (ArrayList<?>)MAP_BINARY.invokeExact(file);
+	}
+
+	/**
+	 * Writes patients to a text store.
+	 * @param file		Name of file
+	 * @param patients	Patients to write
+	 * @return			Summary of the save
+	 */
+	static String writeText(String file, Collection<?> patients) throws Throwable {
+		return (String)WRITE_TEXT.invokeExact(file, (Collection)patients);
+	}
+
+	/**
+	 * Writes patients to a binary store.
+	 * @param file		Name of file
+	 * @param patients	Patients to write
+	 * @return			Summary of the save
+	 */
+	static String writeBinary(String file, Collection<?> patients) throws Throwable {
+		return (String)WRITE_BINARY.invokeExact(file, (Collection)patients);
+	}
+
+	/**
+	 * Checks a login.
+	 * @param name	Name of dentist
+	 * @param pass	Password of dentist
+	 * @return		Validity of login
+	 */
+	static boolean checkLogIn(String name, String pass) throws Throwable {
+		return (boolean)CHECK_LOG_IN.invokeExact(name, pass);
+	}
+
+	/**
+	 * Creates a dentist named "Dentist a" with password "passa", as registered for logins, without registering them.
+	 * @param a	Number in the name of the dentist
+	 * @return	Dentist
+	 */
+	static Object dentist(int a) throws Throwable {
+		return NEW_DENTIST.invokeExact("Dentist " + a, "Address " + a, "pass" + a);
+	}
+
+	/**
+	 * Gets the name of a dentist.
+	 * @param dentist	Dentist
+	 * @return			Name of dentist
+	 */
+	static String dentistName(Object dentist) throws Throwable {
+		return (String)GET_DENTIST_NAME.invokeExact(dentist);
+	}
+
+	/**
+	 * Writes a report.
+	 * @param reports	Report engine
+	 * @param mode		Mode of report, 0 by name, 1 by unpaid, 2 by age
+	 * @param format	Index of the output format in the report engine
+	 * @param writer	Writer to write to
+	 * @param now		Current time
+	 * @return			Amount of patients written
+	 */
+	static int writeReport(Object reports, int mode, int format, Writer writer, long now) throws Throwable {
+		return (int)WRITE_REPORT.invokeExact(reports, mode, FORMATS[format], writer, now, 0L);
+	}
+
+	/**
+	 * Drops the sorted copies of a report engine, as a payment does.
+	 * @param reports	Report engine
+	 */
+	static void balancesChanged(Object reports) throws Throwable {
+		BALANCES_CHANGED.invokeExact(reports);
+	}
+
+	/**
+	 * Finds an application class.
+	 * @param name	Name of class
+	 * @return		Class
+	 */
+	private static Class<?> type(String name){
+		try{
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e){
+			throw new IllegalStateException("Application class " + name + " is not on the class path.", e);
+		}
+	}
+
+	/**
+	 * Finds a constructor, typed to take and return application classes as Object.
+	 * @param type		Class to construct
+	 * @param params	Parameter types
+	 * @return			Handle of the constructor
+	 */
+	private static MethodHandle constructor(Class<?> type, Class<?>... params){
+		try{
+			MethodHandle handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class, params));
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e){
+			throw new IllegalStateException("Missing constructor of " + type.getName() + ".", e);
+		}
+	}
+
+	/**
+	 * Finds an instance method, typed to take and return application classes, including the instance, as Object.
+	 * @param type		Class of the method
+	 * @param name		Name of method
+	 * @param result	Return type
+	 * @param params	Parameter types
+	 * @return			Handle of the method
+	 */
+	private static MethodHandle method(Class<?> type, String name, Class<?> result, Class<?>... params){
+		try{
+			MethodHandle handle = LOOKUP.findVirtual(type, name, MethodType.methodType(result, params));
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e){
+			throw new IllegalStateException("Missing method " + type.getName() + "." + name + ".", e);
+		}
+	}
+
+	/**
+	 * Finds a static method, typed to take and return application classes as Object.
+	 * @param type		Class of the method
+	 * @param name		Name of method
+	 * @param result	Return type
+	 * @param params	Parameter types
+	 * @return			Handle of the method
+	 */
+	private static MethodHandle staticMethod(Class<?> type, String name, Class<?> result, Class<?>... params){
+		try{
+			MethodHandle handle = LOOKUP.findStatic(type, name, MethodType.methodType(result, params));
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e){
+			throw new IllegalStateException("Missing method " + type.getName() + "." + name + ".", e);
+		}
+	}
+
+	/**
+	 * Finds a private static method, typed to take and return application classes as Object.
+	 * @param type		Class of the method
+	 * @param name		Name of method
+	 * @param params	Parameter types
+	 * @return			Handle of the method
+	 */
+	private static MethodHandle privateStaticMethod(Class<?> type, String name, Class<?>... params){
+		try{
+			Method method = type.getDeclaredMethod(name, params);
+			method.setAccessible(true);
+			MethodHandle handle = LOOKUP.unreflect(method);
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e){
+			throw new IllegalStateException("Missing method " + type.getName() + "." + name + ".", e);
+		}
+	}
+
+	/**
+	 * Replaces application classes in a method type with Object, as they cannot be named in the benchmarks.
+	 * @param type	Method type
+	 * @return		Method type using only Java classes
+	 */
+	private static MethodType erase(MethodType type){
+		for(int a = 0; a < type.parameterCount(); a++){
+			if(type.parameterType(a).getClassLoader() != null)
+				type = type.changeParameterType(a, Object.class);
+		}
+		if(type.returnType().getClassLoader() != null)
+			type = type.changeReturnType(Object.class);
+		return type;
+	}
+
+	/**
+	 * Reads a static field, even one only visible to the application classes.
+	 * @param type	Class of the field
+	 * @param name	Name of field
+	 * @return		Value of field
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T staticField(Class<?> type, String name){
+		try{
+			Field field = type.getDeclaredField(name);
+			field.setAccessible(true);
+			return (T)field.get(null);
+		}
+		catch (ReflectiveOperationException e){
+			throw new IllegalStateException("Missing field " + type.getName() + "." + name + ".", e);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package dentistry.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks checking logins of registered dentists, unknown dentists and wrong passwords in turn.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class LoginBenchmark {
+
+	@Param({"10", "1000", "100000"})
+	public int dentists;
+
+	private String[] names;
+	private String[] passwords;
+	private int next;
+
+	/**
+	 * Registers the dentists and picks the logins to check.
+	 */
+	@Setup(Level.Trial)
+	public void create(){
+		Dentistry.dentists(dentists);
+		names = new String[1024];
+		passwords = new String[names.length];
+		Random random = new Random(PatientData.SEED);
+		for(int a = 0; a < names.length; a++){
+			int dentist = random.nextInt(dentists);
+			names[a] = a % 10 == 0 ? "Unknown " + a : "Dentist " + dentist;
+			passwords[a] = a % 10 == 1 ? "wrong" : "pass" + dentist;
+		}
+	}
+
+	/**
+	 * Checks the next login.
+	 */
+	@Benchmark
+	public boolean checkLogIn() throws Throwable {
+		int a = next++ & (names.length - 1);
+		return Dentistry.checkLogIn(names[a], passwords[a]);
+	}
+}
@@ -0,0 +1,69 @@
+package dentistry.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Responsible for the patients the benchmarks work on, and for stores holding them.
+ *
+ * Patients are created from a fixed seed once per combination of parameters, so results
+ * of different runs and releases compare the same patients. Override counts with JMH's -p option,
+ * such as -p patients=250000.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@State(Scope.Benchmark)
+public class PatientData {
+
+	final static long SEED = 20170501L;
+
+	@Param({"1000", "10000", "100000"})
+	public int patients;
+
+	@Param({"1", "4"})
+	public int invoices;	//Invoices per patient
+
+	@Param({"1"})
+	public int payments;	//Payments per invoice
+
+	long now;				//Time the patients were created for
+	List<Object> created;	//Patients in the order they were created
+	File dir;				//Holds the stores
+	String textStore;
+	String binaryStore;
+
+	/**
+	 * Creates the patients and writes them to a text and a binary store.
+	 */
+	@Setup(Level.Trial)
+	public void create() throws Throwable {
+		now = System.currentTimeMillis();
+		created = Dentistry.patients(SEED, patients, invoices, payments, now);
+		dir = Files.createTempDirectory("dentistry-benchmarks").toFile();
+		textStore = new File(dir, "Patients.txt").getPath();
+		binaryStore = new File(dir, "Patients.dat").getPath();
+		Dentistry.writeText(textStore, created);
+		Dentistry.writeBinary(binaryStore, created);
+	}
+
+	/**
+	 * Deletes the stores.
+	 */
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		File[] files = dir.listFiles();
+		if(files != null){
+			for(File file : files)
+				Files.deleteIfExists(file.toPath());
+		}
+		Files.deleteIfExists(dir.toPath());
+	}
+}
@@ -0,0 +1,106 @@
+package dentistry.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stress test posting payments to random patients from several threads at once, as the GUI and the API may.
+ *
+ * Run it with a growing amount of threads, such as -t 1, -t 2 and -t 4 up to the amount of cores. Payments lock only
+ * the patient they change, so the score should grow with the threads, short of the journal which records payments in turn.
+ * After each iteration the outstanding amounts of the patients are checked against the total the system keeps,
+ * which fails the run if a payment was lost or counted twice.
+ * Every iteration starts from new patients with a new journal, so payments do not build up.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Ddentistry.journal.compact=2147483647")	//Saves would write to the working directory
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PaymentBenchmark {
+
+	@Param({"100000"})
+	public int patients;
+
+	private List<Object> created;	//Patients in the system
+	private int[] numbers;		//Patient numbers
+	private int[] invoices;		//Number of an invoice of each patient
+	private File dir;			//Holds the journal
+	private String journal;
+
+	/**
+	 * Makes room for the journal.
+	 */
+	@Setup(Level.Trial)
+	public void create() throws IOException {
+		dir = Files.createTempDirectory("dentistry-payments").toFile();
+		journal = new File(dir, "Patients.journal").getPath();
+	}
+
+	/**
+	 * Puts new patients with one invoice each in the system.
+	 */
+	@Setup(Level.Iteration)
+	public void load() throws Throwable {
+		created = Dentistry.patients(PatientData.SEED, patients, 1, 0, System.currentTimeMillis());
+		numbers = new int[created.size()];
+		invoices = new int[created.size()];
+		for(int a = 0; a < created.size(); a++){
+			numbers[a] = Dentistry.number(created.get(a));
+			invoices[a] = Dentistry.invoices(created.get(a))[0];
+		}
+		Dentistry.load(created, journal);
+	}
+
+	/**
+	 * Checks the outstanding amounts of the patients add up to the total the system keeps.
+	 */
+	@TearDown(Level.Iteration)
+	public void check() throws Throwable {
+		long sum = 0;
+		for(Object patient : created)
+			sum += Dentistry.outstanding(patient);
+		long total = Dentistry.totalOutstanding();
+		if(sum != total)
+			throw new IllegalStateException("Patients owe " + sum + " cents but the system has " + total + " outstanding.");
+	}
+
+	/**
+	 * Closes the journal and deletes it.
+	 */
+	@TearDown(Level.Trial)
+	public void delete() throws Throwable {
+		Dentistry.closeJournal();
+		Files.deleteIfExists(new File(journal).toPath());
+		Files.deleteIfExists(dir.toPath());
+	}
+
+	/**
+	 * Posts a payment of one cent to a random patient.
+	 */
+	@Benchmark
+	public boolean addPay() throws Throwable {
+		int a = ThreadLocalRandom.current().nextInt(numbers.length);
+		return Dentistry.addPay(numbers[a], invoices[a], "0.01");
+	}
+}
@@ -0,0 +1,65 @@
+package dentistry.benchmarks;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing reports, leaving out the disk by writing to a writer that drops the text.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+	@Param({"0", "1", "2"})
+	public int mode;	//0 by name, 1 by unpaid, 2 by age
+
+	@Param({"0"})
+	public int format;	//0 text, 1 CSV, 2 JSON lines, 3 fixed width
+
+	private Object reports;
+	private Writer writer;
+
+	/**
+	 * Creates the report engine over the patients.
+	 */
+	@Setup(Level.Trial)
+	public void create(PatientData data){
+		reports = Dentistry.reports(data.created);
+		writer = Writer.nullWriter();
+	}
+
+	/**
+	 * Writes a report again with nothing changed, reusing the sorted patients of the last report.
+	 */
+	@Benchmark
+	public int unchanged(PatientData data) throws Throwable {
+		return Dentistry.writeReport(reports, mode, format, writer, data.now);
+	}
+
+	/**
+	 * Writes a report after a payment, which sorts the patients again.
+	 */
+	@Benchmark
+	public int afterPayment(PatientData data) throws Throwable {
+		Dentistry.balancesChanged(reports);
+		return Dentistry.writeReport(reports, mode, format, writer, data.now);
+	}
+}
@@ -0,0 +1,45 @@
+package dentistry.benchmarks;
+
+import java.io.File;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler and saves results as JSON, named after the version benchmarked,
+ * so throughput and allocation rate can be compared release over release.
+ *
+ * Takes the usual JMH options, such as a benchmark name pattern, -p patients=1000 or -rff to choose the result file.
+ * Results are saved to results/jmh-VERSION.json by default.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+public class RunBenchmarks {
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args	JMH options
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats() || cmd.shouldListWithParams()){
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if(cmd.getProfilers().isEmpty())
+			options.addProfiler(GCProfiler.class);
+		if(!cmd.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if(!cmd.getResult().hasValue()){
+			String version = RunBenchmarks.class.getPackage().getImplementationVersion();
+			new File("results").mkdirs();
+			options.result("results/jmh-" + (version == null ? "dev" : version) + ".json");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,48 @@
+package dentistry.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks sorting patients, as reports do when patients changed since the last report.
+ * Each sort works on a fresh copy of the patients in the order they were created.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SortBenchmark {
+
+	/**
+	 * Sorts patients by outstanding amount with PatientUnpaidComparator.
+	 */
+	@Benchmark
+	public List<Object> byUnpaid(PatientData data){
+		List<Object> sorted = new ArrayList<Object>(data.created);
+		Collections.sort(sorted, Dentistry.UNPAID_COMPARATOR);
+		return sorted;
+	}
+
+	/**
+	 * Sorts patients by name, their natural order.
+	 */
+	@Benchmark
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public List<Object> byName(PatientData data){
+		List sorted = new ArrayList<Object>(data.created);
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,57 @@
+package dentistry.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading and saving the patient stores, as the application does when it starts and saves.
+ * @author	Kamil Markiewicz
+ * @version	2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StoreBenchmark {
+
+	/**
+	 * Reads every patient, invoice and payment from the text store.
+	 */
+	@Benchmark
+	public List<?> readText(PatientData data) throws Throwable {
+		return Dentistry.readText(data.textStore);
+	}
+
+	/**
+	 * Maps patients from the binary store, leaving invoices to be decoded once used.
+	 */
+	@Benchmark
+	public List<?> mapBinary(PatientData data) throws Throwable {
+		return Dentistry.mapBinary(data.binaryStore);
+	}
+
+	/**
+	 * Writes every patient to a text store.
+	 */
+	@Benchmark
+	public String writeText(PatientData data) throws Throwable {
+		return Dentistry.writeText(new File(data.dir, "Saved.txt").getPath(), data.created);
+	}
+
+	/**
+	 * Writes every patient to a binary store.
+	 */
+	@Benchmark
+	public String writeBinary(PatientData data) throws Throwable {
+		return Dentistry.writeBinary(new File(data.dir, "Saved.dat").getPath(), data.created);
+	}
+}